@@ -2,30 +2,58 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.SearchSuggestion;
 import ru.yandex.practicum.filmorate.model.enumerations.SortType;
+import ru.yandex.practicum.filmorate.service.BulkImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
 @RequestMapping("/films")
+@Validated
 @Slf4j
 public class FilmController {
     private final FilmService filmService;
+    private final NdjsonWriter ndjsonWriter;
+    private final BulkImportService bulkImportService;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, NdjsonWriter ndjsonWriter, BulkImportService bulkImportService) {
         this.filmService = filmService;
+        this.ndjsonWriter = ndjsonWriter;
+        this.bulkImportService = bulkImportService;
     }
 
     @GetMapping
-    public ResponseEntity<List<Film>> getAllFilms() {
-        log.info("Получен GET запрос на получение всех фильмов");
-        return ResponseEntity.ok(filmService.getAllFilms());
+    public ResponseEntity<List<Film>> getAllFilms(@PositiveOrZero @RequestParam(required = false) Integer after,
+                                                  @Positive @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.info("Получен GET запрос на получение всех фильмов");
+            return ResponseEntity.ok(filmService.getAllFilms());
+        }
+        log.info("Получен GET запрос на получение страницы фильмов с after = {}, limit = {}", after, limit);
+        return ResponseEntity.ok(filmService.getFilmsPage(after == null ? 0 : after, limit));
+    }
+
+    // выбирается при заголовке Accept: application/x-ndjson
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllFilms() {
+        log.info("Получен GET запрос на потоковую выгрузку всех фильмов");
+        return ndjsonWriter.stream(filmService::streamAllFilms);
     }
 
     @GetMapping("/{id}")
@@ -55,12 +83,19 @@ public class FilmController {
     ) {
         log.debug("Возвращаем фильмы с поисковым запросом: {}", query);
         if (query == null || by == null) {
-            return ResponseEntity.ok(filmService.getMostLikedFilms(filmService.getAllFilms().size()));
+            return ResponseEntity.ok(filmService.getMostLikedFilms(Integer.MAX_VALUE));
         } else {
             return ResponseEntity.ok(filmService.searchFilms(query, by));
         }
     }
 
+    @GetMapping("/search/suggest")
+    public ResponseEntity<List<SearchSuggestion>> getSearchSuggestions(@RequestParam(defaultValue = "") String query,
+                                                                      @Positive @RequestParam(defaultValue = "10") int count) {
+        log.debug("Возвращаем подсказки для поискового запроса: {}", query);
+        return ResponseEntity.ok(filmService.getSearchSuggestions(query, count));
+    }
+
     @GetMapping("/director/{directorId}")
     public ResponseEntity<List<Film>> getDirectorFilms(@PathVariable int directorId,
                                                        @RequestParam(defaultValue = "year") String sortBy) {
@@ -68,6 +103,12 @@ public class FilmController {
         return ResponseEntity.ok(filmService.getDirectorFilms(directorId, SortType.fromStringIgnoreCase(sortBy)));
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ImportReport> importFilms(InputStream inputStream) throws IOException {
+        log.info("Получен POST запрос на массовое добавление фильмов");
+        return ResponseEntity.ok(bulkImportService.importFilms(inputStream));
+    }
+
     @PostMapping
     public ResponseEntity<Film> addFilm(@Valid @RequestBody Film film) {
         log.info("Получен POST запрос на добавление нового фильма");
@@ -86,12 +127,24 @@ public class FilmController {
         return ResponseEntity.ok(filmService.addLikeToFilm(filmId, userId));
     }
 
+    @PutMapping(value = "/{id}/like/{userId}", params = "compact=true")
+    public ResponseEntity<FilmLikes> addLike(@PathVariable("id") int filmId, @PathVariable int userId) {
+        log.info("Получен PUT запрос на добавление лайка фильму с ответом без фильма");
+        return ResponseEntity.ok(filmService.addLike(filmId, userId));
+    }
+
     @DeleteMapping("/{id}/like/{userId}")
     public ResponseEntity<Film> deleteLikeToFilm(@PathVariable("id") int filmId, @PathVariable int userId) {
         log.info("Получен DELETE запрос на удаление лайка фильму");
         return ResponseEntity.ok(filmService.deleteLikeToFilm(filmId, userId));
     }
 
+    @DeleteMapping(value = "/{id}/like/{userId}", params = "compact=true")
+    public ResponseEntity<FilmLikes> deleteLike(@PathVariable("id") int filmId, @PathVariable int userId) {
+        log.info("Получен DELETE запрос на удаление лайка фильму с ответом без фильма");
+        return ResponseEntity.ok(filmService.deleteLike(filmId, userId));
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Film> deleteFilm(@PathVariable("id") int id) {
         log.info("Запорос на удаление фильма с id = " + id);
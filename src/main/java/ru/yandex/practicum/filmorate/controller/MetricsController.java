@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/metrics")
+@Slf4j
+public class MetricsController {
+    private final List<MetricsSource> metricsSources;
+
+    @Autowired
+    public MetricsController(List<MetricsSource> metricsSources) {
+        this.metricsSources = metricsSources;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Map<String, Object>>> getMetrics() {
+        log.info("Получен GET запрос на получение метрик");
+        Map<String, Map<String, Object>> metrics = new TreeMap<>();
+
+        for (MetricsSource source : metricsSources) {
+            metrics.put(source.getMetricsName(), source.getMetrics());
+        }
+
+        return ResponseEntity.ok(metrics);
+    }
+}
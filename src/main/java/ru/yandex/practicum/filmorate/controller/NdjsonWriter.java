@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Отдаёт объекты в формате NDJSON: по одному JSON-объекту на строку.
+ * Каждый объект записывается в ответ сразу после получения из источника, весь ответ в памяти не собирается.
+ */
+@Component
+public class NdjsonWriter {
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public NdjsonWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // source передаёт объекты в полученный Consumer по одному
+    public <T> ResponseEntity<StreamingResponseBody> stream(Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = outputStream -> {
+            try {
+                source.accept(item -> writeLine(outputStream, item));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private void writeLine(OutputStream outputStream, Object item) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(item));
+            outputStream.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
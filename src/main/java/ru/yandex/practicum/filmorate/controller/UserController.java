@@ -2,32 +2,58 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.ImportReport;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.BulkImportService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
 @RequestMapping("/users")
+@Validated
 @Slf4j
 public class UserController {
 
     private final UserService userService;
+    private final NdjsonWriter ndjsonWriter;
+    private final BulkImportService bulkImportService;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, NdjsonWriter ndjsonWriter, BulkImportService bulkImportService) {
         this.userService = userService;
+        this.ndjsonWriter = ndjsonWriter;
+        this.bulkImportService = bulkImportService;
     }
 
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        log.info("Получен GET запрос на получение всех пользователей");
-        return ResponseEntity.ok(userService.getAllUsers());
+    public ResponseEntity<List<User>> getAllUsers(@PositiveOrZero @RequestParam(required = false) Integer after,
+                                                  @Positive @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.info("Получен GET запрос на получение всех пользователей");
+            return ResponseEntity.ok(userService.getAllUsers());
+        }
+        log.info("Получен GET запрос на получение страницы пользователей с after = {}, limit = {}", after, limit);
+        return ResponseEntity.ok(userService.getUsersPage(after == null ? 0 : after, limit));
+    }
+
+    // выбирается при заголовке Accept: application/x-ndjson
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        log.info("Получен GET запрос на потоковую выгрузку всех пользователей");
+        return ndjsonWriter.stream(userService::streamAllUsers);
     }
 
     @GetMapping("/{id}")
@@ -42,12 +68,25 @@ public class UserController {
         return ResponseEntity.ok(userService.getFriends(userId));
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public ResponseEntity<List<User>> getFriendSuggestions(@PathVariable("id") int userId,
+                                                           @Positive @RequestParam(defaultValue = "10") int count) {
+        log.info("Получен GET запрос на получение возможных друзей с count = {}", count);
+        return ResponseEntity.ok(userService.getFriendSuggestions(userId, count));
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
     public ResponseEntity<List<User>> getSameFriends(@PathVariable("id") int userId, @PathVariable int otherId) {
         log.info("Получен GET запрос на получение общего списока друзей");
         return ResponseEntity.ok(userService.getSameFriends(userId, otherId));
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ImportReport> importUsers(InputStream inputStream) throws IOException {
+        log.info("Получен POST запрос на массовое добавление пользователей");
+        return ResponseEntity.ok(bulkImportService.importUsers(inputStream));
+    }
+
     @PostMapping
     public ResponseEntity<User> addUser(@Valid @RequestBody User user) {
         log.info("Получен POST запрос на добавление нового пользователя");
@@ -85,8 +124,17 @@ public class UserController {
     }
 
     @GetMapping("/{id}/feed")
-    public ResponseEntity<List<Event>> getFeed(@PathVariable("id") int userID) {
-        log.info("Получен GET запрос на получение ленты событий");
-        return ResponseEntity.ok(userService.getAllFeedByUserId(userID));
+    public ResponseEntity<List<Event>> getFeed(@PathVariable("id") int userID,
+                                               @PositiveOrZero @RequestParam(defaultValue = "0") int after,
+                                               @Positive @RequestParam(required = false) Integer limit) {
+        log.info("Получен GET запрос на получение ленты событий с after = {}, limit = {}", after, limit);
+        return ResponseEntity.ok(userService.getFeedByUserId(userID, after, limit));
+    }
+
+    @GetMapping("/{id}/feed/friends")
+    public ResponseEntity<List<Event>> getFriendsFeed(@PathVariable("id") int userID,
+                                                      @Positive @RequestParam(required = false) Integer limit) {
+        log.info("Получен GET запрос на получение ленты событий друзей с limit = {}", limit);
+        return ResponseEntity.ok(userService.getFriendsFeed(userID, limit));
     }
 }
\ No newline at end of file
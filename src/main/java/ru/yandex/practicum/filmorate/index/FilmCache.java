@@ -0,0 +1,262 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Кэш собранных фильмов по id. Хранит не больше max-size фильмов, при переполнении вытесняется
+ * дольше всех не читавшийся, записи старше ttl считаются отсутствующими.
+ * Фильмы распределены по частям по остатку от id, у каждой части своя блокировка, очередь вытеснения
+ * на max-size / STRIPES фильмов и счётчик изменений, поэтому чтения разных фильмов не ждут друг друга.
+ * Изменение фильма удаляет его из кэша, а лайки обновляются заменой сохранённого фильма без перечитывания.
+ * Фильм, загруженный из базы, сохраняется только если с момента {@link #stamp(int)} фильмы его части не изменяли,
+ * иначе параллельное чтение могло бы вернуть в кэш устаревшую версию.
+ * Сохранённый фильм после записи в кэш не меняется, поэтому копия для вызывающего кода,
+ * который изменяет полученные фильмы, делается после снятия блокировки.
+ */
+@Component
+public class FilmCache implements MetricsSource {
+    private static final int STRIPES = 16;
+    // примерный размер фильма без строк и коллекций, элемента множества и объекта жанра или режиссёра
+    private static final long FILM_BYTES = 200;
+    private static final long SET_ENTRY_BYTES = 48;
+    private static final long REFERENCE_BYTES = 40;
+
+    private final int maxSize;
+    private final int stripeSize;
+    private final long ttlMillis;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong likeUpdates = new AtomicLong();
+    private final AtomicLong rejectedPuts = new AtomicLong();
+
+    @Autowired
+    public FilmCache(@Value("${filmorate.films.cache.max-size:1000}") int maxSize,
+                     @Value("${filmorate.films.cache.ttl-ms:300000}") long ttlMillis) {
+        this.maxSize = maxSize;
+        this.stripeSize = Math.max(1, (maxSize + STRIPES - 1) / STRIPES);
+        this.ttlMillis = ttlMillis;
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // копия фильма из кэша или null
+    public Film get(int filmId) {
+        Stripe stripe = stripe(filmId);
+        Entry entry;
+        stripe.lock.lock();
+        try {
+            entry = stripe.entries.get(filmId);
+            if (entry != null && System.currentTimeMillis() - entry.cachedAt > ttlMillis) {
+                stripe.entries.remove(filmId);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.film);
+    }
+
+    // берётся до загрузки фильма из базы и передаётся в put
+    public long stamp(int filmId) {
+        Stripe stripe = stripe(filmId);
+        stripe.lock.lock();
+        try {
+            return stripe.version;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void put(Film film, long stamp) {
+        Entry entry = new Entry(copy(film), System.currentTimeMillis());
+        Stripe stripe = stripe(film.getId());
+        stripe.lock.lock();
+        try {
+            if (stripe.version != stamp) {
+                rejectedPuts.incrementAndGet();
+                return;
+            }
+            stripe.entries.put(film.getId(), entry);
+            Iterator<Integer> iterator = stripe.entries.keySet().iterator();
+            while (stripe.entries.size() > stripeSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void addLike(int filmId, int userId) {
+        updateLikes(filmId, likes -> likes.add(userId));
+    }
+
+    public void removeLike(int filmId, int userId) {
+        updateLikes(filmId, likes -> likes.remove(userId));
+    }
+
+    public void invalidate(int filmId) {
+        Stripe stripe = stripe(filmId);
+        stripe.lock.lock();
+        try {
+            ++stripe.version;
+            if (stripe.entries.remove(filmId) != null) {
+                invalidations.incrementAndGet();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // вызывается после переименования или удаления режиссёра
+    public void invalidateDirector(int directorId) {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                // фильм режиссёра может загружаться прямо сейчас, поэтому сбрасываются счётчики всех частей
+                ++stripe.version;
+                Iterator<Entry> iterator = stripe.entries.values().iterator();
+                while (iterator.hasNext()) {
+                    Film film = iterator.next().film;
+                    if (film.getDirectors().stream().anyMatch(director -> director.getId() == directorId)) {
+                        iterator.remove();
+                        invalidations.incrementAndGet();
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "filmCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        int size = 0;
+        long memoryBytes = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (Entry entry : stripe.entries.values()) {
+                    memoryBytes += estimateBytes(entry.film);
+                }
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        metrics.put("size", size);
+        metrics.put("memoryBytes", memoryBytes);
+
+        long requests = hits.get() + misses.get();
+        metrics.put("maxSize", maxSize);
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("hitRate", requests == 0 ? 0.0 : (double) hits.get() / requests);
+        metrics.put("evictions", evictions.get());
+        metrics.put("expirations", expirations.get());
+        metrics.put("invalidations", invalidations.get());
+        metrics.put("likeUpdates", likeUpdates.get());
+        metrics.put("rejectedPuts", rejectedPuts.get());
+        return metrics;
+    }
+
+    // сохранённый фильм могут копировать без блокировки, поэтому лайки меняются в новой копии
+    private void updateLikes(int filmId, Consumer<Set<Integer>> update) {
+        Stripe stripe = stripe(filmId);
+        stripe.lock.lock();
+        try {
+            ++stripe.version;
+            Entry entry = stripe.entries.get(filmId);
+            if (entry != null) {
+                Film film = copy(entry.film);
+                update.accept(film.getUserLikes());
+                stripe.entries.put(filmId, new Entry(film, entry.cachedAt));
+                likeUpdates.incrementAndGet();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe stripe(int filmId) {
+        return stripes[Math.floorMod(filmId, STRIPES)];
+    }
+
+    private static Film copy(Film film) {
+        Film result = new Film();
+        result.setId(film.getId());
+        result.setName(film.getName());
+        result.setDescription(film.getDescription());
+        result.setReleaseDate(film.getReleaseDate());
+        result.setDuration(film.getDuration());
+        result.setMpa(film.getMpa());
+        result.setGenres(new LinkedHashSet<>(film.getGenres()));
+        result.setDirectors(new LinkedHashSet<>(film.getDirectors()));
+        result.setUserLikes(new HashSet<>(film.getUserLikes()));
+        return result;
+    }
+
+    private static long estimateBytes(Film film) {
+        long bytes = FILM_BYTES + 2L * (length(film.getName()) + length(film.getDescription()));
+        for (Genre genre : film.getGenres()) {
+            bytes += SET_ENTRY_BYTES + REFERENCE_BYTES + 2L * length(genre.getName());
+        }
+        for (Director director : film.getDirectors()) {
+            bytes += SET_ENTRY_BYTES + REFERENCE_BYTES + 2L * length(director.getName());
+        }
+        return bytes + film.getUserLikes().size() * SET_ENTRY_BYTES;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        // увеличивается при каждом изменении фильма этой части
+        private long version;
+    }
+
+    private static class Entry {
+        private final Film film;
+        private final long cachedAt;
+
+        private Entry(Film film, long cachedAt) {
+            this.film = film;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.SearchSuggestion;
+import ru.yandex.practicum.filmorate.model.enumerations.SuggestionType;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс по названиям фильмов и именам режиссёров, который хранится в памяти.
+ * Для каждой подстроки длиной от 1 до 3 символов хранится множество фильмов (режиссёров), в которых она встречается.
+ * Короткий запрос отвечается одним списком, для длинного пересекаются списки его триграмм
+ * и оставшиеся кандидаты проверяются на вхождение запроса целиком, поэтому выдача совпадает
+ * с поиском через LIKE '%query%' без учёта регистра.
+ * Для подсказок при вводе дополнительно хранится отсортированное отображение из всех окончаний текста,
+ * начинающихся с нового слова, так что дополнения префикса находятся одним диапазоном ключей.
+ * Если дополнений больше SORTED_MATCHES_LIMIT, они не собираются, а рейтинг фильмов (режиссёров)
+ * обходится от самых популярных до count-го подходящего. Лайки режиссёров хранятся суммами
+ * и обновляются вместе с лайками их фильмов.
+ */
+@Component
+@Slf4j
+public class FilmSearchIndex implements MetricsSource {
+    private static final int GRAM_LENGTH = 3;
+    private static final int SORTED_MATCHES_LIMIT = 1000;
+    private static final Comparator<SearchSuggestion> SUGGESTION_ORDER =
+            Comparator.comparingInt((SearchSuggestion suggestion) -> -suggestion.getLikes())
+                    .thenComparing(SearchSuggestion::getType)
+                    .thenComparingInt(SearchSuggestion::getId);
+    private static final Comparator<DirectorRank> DIRECTOR_ORDER =
+            Comparator.comparingInt((DirectorRank director) -> -director.likes)
+                    .thenComparingInt(director -> director.directorId);
+
+    private final FilmStorage filmStorage;
+    private final DirectorStorage directorStorage;
+    private final PopularityLeaderboard popularityLeaderboard;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TextIndex titles = new TextIndex();
+    private final TextIndex directorNames = new TextIndex();
+    private final Map<Integer, Set<Integer>> directorFilms = new HashMap<>();
+    private final Map<Integer, Set<Integer>> filmDirectors = new HashMap<>();
+    private final Map<Integer, Integer> filmLikes = new HashMap<>();
+    private final Map<Integer, DirectorRank> directorRanks = new HashMap<>();
+    private final NavigableSet<DirectorRank> directorRanking = new TreeSet<>(DIRECTOR_ORDER);
+    private final AtomicLong searchCount = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+    private final AtomicLong suggestCount = new AtomicLong();
+    private final AtomicLong suggestNanos = new AtomicLong();
+    private long lastRebuildMillis;
+
+    @Autowired
+    public FilmSearchIndex(@Qualifier("dBFilmStorage") FilmStorage filmStorage,
+                           DirectorStorage directorStorage,
+                           PopularityLeaderboard popularityLeaderboard) {
+        this.filmStorage = filmStorage;
+        this.directorStorage = directorStorage;
+        this.popularityLeaderboard = popularityLeaderboard;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        int directorsCount;
+        List<Film> films = new ArrayList<>(filmStorage.getAllFilms().values());
+        Map<Integer, Set<Director>> filmDirectorsMap = films.isEmpty()
+                ? Collections.emptyMap()
+                : directorStorage.getDirectorByFilm(films);
+        Map<Integer, Integer> likes = new HashMap<>();
+        for (Film film : films) {
+            likes.put(film.getId(), popularityLeaderboard.getLikes(film.getId()));
+        }
+
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            directorNames.clear();
+            directorFilms.clear();
+            filmDirectors.clear();
+            filmLikes.clear();
+            directorRanks.clear();
+            directorRanking.clear();
+
+            for (Film film : films) {
+                insertFilm(film.getId(), film.getName(), filmDirectorsMap.getOrDefault(film.getId(), Set.of()),
+                        likes.get(film.getId()));
+            }
+
+            directorsCount = directorNames.size();
+            lastRebuildMillis = System.currentTimeMillis() - start;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Поисковый индекс фильмов перестроен: {} фильмов, {} режиссёров за {} мс",
+                films.size(), directorsCount, lastRebuildMillis);
+    }
+
+    // возвращает id найденных фильмов по убыванию количества лайков, при равенстве - по возрастанию id
+    public List<Integer> search(String query, boolean byDirector, boolean byTitle) {
+        long start = System.nanoTime();
+        String normalized = normalize(query);
+        Set<Integer> filmIds = new HashSet<>();
+
+        lock.readLock().lock();
+        try {
+            if (byTitle) {
+                filmIds.addAll(titles.find(normalized));
+            }
+            if (byDirector) {
+                for (int directorId : directorNames.find(normalized)) {
+                    filmIds.addAll(directorFilms.getOrDefault(directorId, Set.of()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Integer> result = popularityLeaderboard.rank(filmIds);
+
+        searchCount.incrementAndGet();
+        searchNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    // возвращает не более count фильмов и режиссёров, название или имя которых содержит слово, начинающееся с prefix,
+    // по убыванию лайков, при равенстве - сначала фильмы, затем по возрастанию id.
+    // Популярность режиссёра - сумма лайков его фильмов
+    public List<SearchSuggestion> suggest(String prefix, int count) {
+        long start = System.nanoTime();
+        String normalized = normalize(prefix).strip();
+
+        if (normalized.isEmpty() || count <= 0) {
+            return new ArrayList<>();
+        }
+
+        List<SearchSuggestion> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int filmId : topFilms(normalized, count)) {
+                result.add(SearchSuggestion.builder()
+                        .type(SuggestionType.FILM)
+                        .id(filmId)
+                        .name(titles.getText(filmId))
+                        .likes(popularityLeaderboard.getLikes(filmId))
+                        .build());
+            }
+            for (DirectorRank director : topDirectors(normalized, count)) {
+                result.add(SearchSuggestion.builder()
+                        .type(SuggestionType.DIRECTOR)
+                        .id(director.directorId)
+                        .name(directorNames.getText(director.directorId))
+                        .likes(director.likes)
+                        .build());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        result.sort(SUGGESTION_ORDER);
+        if (result.size() > count) {
+            result = new ArrayList<>(result.subList(0, count));
+        }
+
+        suggestCount.incrementAndGet();
+        suggestNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    public void putFilm(Film film) {
+        lock.writeLock().lock();
+        try {
+            removeFilmEntries(film.getId());
+            insertFilm(film.getId(), film.getName(), film.getDirectors() == null ? Set.of() : film.getDirectors(),
+                    film.getUserLikes() == null ? 0 : film.getUserLikes().size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int filmId) {
+        lock.writeLock().lock();
+        try {
+            removeFilmEntries(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addLike(int filmId) {
+        lock.writeLock().lock();
+        try {
+            changeLikes(filmId, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(int filmId) {
+        lock.writeLock().lock();
+        try {
+            changeLikes(filmId, -1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLikes(Collection<Integer> filmIds) {
+        lock.writeLock().lock();
+        try {
+            for (int filmId : filmIds) {
+                changeLikes(filmId, -1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void updateDirector(Director director) {
+        lock.writeLock().lock();
+        try {
+            if (directorNames.remove(director.getId())) {
+                directorNames.put(director.getId(), director.getName());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(int directorId) {
+        lock.writeLock().lock();
+        try {
+            directorNames.remove(directorId);
+            removeDirectorRank(directorId);
+            for (int filmId : directorFilms.getOrDefault(directorId, Set.of())) {
+                filmDirectors.get(filmId).remove(directorId);
+            }
+            directorFilms.remove(directorId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "filmSearchIndex";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            metrics.put("films", titles.size());
+            metrics.put("directors", directorNames.size());
+            metrics.put("titleGrams", titles.grams.size());
+            metrics.put("directorGrams", directorNames.grams.size());
+            metrics.put("titleCompletions", titles.completions.size());
+            metrics.put("directorCompletions", directorNames.completions.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        long count = searchCount.get();
+        metrics.put("searchCount", count);
+        metrics.put("searchAvgMicros", count == 0 ? 0 : searchNanos.get() / count / 1000);
+        count = suggestCount.get();
+        metrics.put("suggestCount", count);
+        metrics.put("suggestAvgMicros", count == 0 ? 0 : suggestNanos.get() / count / 1000);
+        metrics.put("lastRebuildMillis", lastRebuildMillis);
+        return metrics;
+    }
+
+    // не больше count самых популярных фильмов, в названии которых есть слово, начинающееся с prefix
+    private List<Integer> topFilms(String prefix, int count) {
+        Set<Integer> matches = titles.complete(prefix, SORTED_MATCHES_LIMIT);
+        if (matches == null) {
+            return popularityLeaderboard.getMostLiked(count, filmId -> titles.startsWord(filmId, prefix));
+        }
+        List<Integer> ranked = popularityLeaderboard.rank(matches);
+        return ranked.subList(0, Math.min(count, ranked.size()));
+    }
+
+    private List<DirectorRank> topDirectors(String prefix, int count) {
+        Set<Integer> matches = directorNames.complete(prefix, SORTED_MATCHES_LIMIT);
+        List<DirectorRank> result = new ArrayList<>();
+        if (matches == null) {
+            for (DirectorRank director : directorRanking) {
+                if (result.size() >= count) {
+                    break;
+                }
+                if (directorNames.startsWord(director.directorId, prefix)) {
+                    result.add(director);
+                }
+            }
+            return result;
+        }
+
+        for (int directorId : matches) {
+            result.add(directorRanks.get(directorId));
+        }
+        result.sort(DIRECTOR_ORDER);
+        return result.subList(0, Math.min(count, result.size()));
+    }
+
+    private void changeLikes(int filmId, int delta) {
+        Integer likes = filmLikes.get(filmId);
+        if (likes == null) {
+            return;
+        }
+        int newLikes = Math.max(likes + delta, 0);
+        filmLikes.put(filmId, newLikes);
+        for (int directorId : filmDirectors.getOrDefault(filmId, Set.of())) {
+            changeDirectorLikes(directorId, newLikes - likes);
+        }
+    }
+
+    private void changeDirectorLikes(int directorId, int delta) {
+        DirectorRank director = removeDirectorRank(directorId);
+        DirectorRank changed = new DirectorRank(directorId, director == null ? delta : director.likes + delta);
+        directorRanks.put(directorId, changed);
+        directorRanking.add(changed);
+    }
+
+    private DirectorRank removeDirectorRank(int directorId) {
+        DirectorRank director = directorRanks.remove(directorId);
+        if (director != null) {
+            directorRanking.remove(director);
+        }
+        return director;
+    }
+
+    private void insertFilm(int filmId, String title, Set<Director> directors, int likes) {
+        titles.put(filmId, title);
+        filmLikes.put(filmId, likes);
+
+        Set<Integer> directorIds = new HashSet<>();
+        for (Director director : directors) {
+            directorIds.add(director.getId());
+            directorNames.remove(director.getId());
+            directorNames.put(director.getId(), director.getName());
+            directorFilms.computeIfAbsent(director.getId(), id -> new HashSet<>()).add(filmId);
+            changeDirectorLikes(director.getId(), likes);
+        }
+        filmDirectors.put(filmId, directorIds);
+    }
+
+    private void removeFilmEntries(int filmId) {
+        titles.remove(filmId);
+        Integer likes = filmLikes.remove(filmId);
+
+        for (int directorId : filmDirectors.getOrDefault(filmId, Set.of())) {
+            Set<Integer> films = directorFilms.get(directorId);
+            films.remove(filmId);
+            // режиссёр без фильмов не может попасть в выдачу, поэтому его имя больше не нужно
+            if (films.isEmpty()) {
+                directorFilms.remove(directorId);
+                directorNames.remove(directorId);
+                removeDirectorRank(directorId);
+            } else {
+                changeDirectorLikes(directorId, -likes);
+            }
+        }
+        filmDirectors.remove(filmId);
+    }
+
+    private static Set<String> grams(String text, int length) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + length <= text.length(); ++i) {
+            result.add(text.substring(i, i + length));
+        }
+        return result;
+    }
+
+    // окончания текста, которые начинаются с нового слова, включая сам текст
+    private static Set<String> completions(String text) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < text.length(); ++i) {
+            if (Character.isLetterOrDigit(text.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                result.add(text.substring(i));
+            }
+        }
+        if (!text.isEmpty()) {
+            result.add(text);
+        }
+        return result;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toUpperCase();
+    }
+
+    private static void addPosting(Map<String, Set<Integer>> postings, String key, int id) {
+        postings.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+    }
+
+    private static void removePosting(Map<String, Set<Integer>> postings, String key, int id) {
+        Set<Integer> posting = postings.get(key);
+        if (posting != null) {
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    private static class DirectorRank {
+        private final int directorId;
+        private final int likes;
+
+        private DirectorRank(int directorId, int likes) {
+            this.directorId = directorId;
+            this.likes = likes;
+        }
+    }
+
+    // индекс по одному виду текстов: названиям фильмов или именам режиссёров
+    private static class TextIndex {
+        private final Map<Integer, String> texts = new HashMap<>();
+        private final Map<Integer, String> normalizedTexts = new HashMap<>();
+        private final Map<String, Set<Integer>> grams = new HashMap<>();
+        private final NavigableMap<String, Set<Integer>> completions = new TreeMap<>();
+
+        private void put(int id, String text) {
+            String normalized = normalize(text);
+            texts.put(id, text);
+            normalizedTexts.put(id, normalized);
+            for (int length = 1; length <= GRAM_LENGTH; ++length) {
+                for (String gram : grams(normalized, length)) {
+                    addPosting(grams, gram, id);
+                }
+            }
+            for (String completion : completions(normalized)) {
+                addPosting(completions, completion, id);
+            }
+        }
+
+        private boolean remove(int id) {
+            texts.remove(id);
+            String normalized = normalizedTexts.remove(id);
+            if (normalized == null) {
+                return false;
+            }
+            for (int length = 1; length <= GRAM_LENGTH; ++length) {
+                for (String gram : grams(normalized, length)) {
+                    removePosting(grams, gram, id);
+                }
+            }
+            for (String completion : completions(normalized)) {
+                removePosting(completions, completion, id);
+            }
+            return true;
+        }
+
+        private Set<Integer> find(String query) {
+            if (query.isEmpty()) {
+                return normalizedTexts.keySet();
+            }
+            if (query.length() <= GRAM_LENGTH) {
+                return grams.getOrDefault(query, Set.of());
+            }
+
+            List<Set<Integer>> postings = new ArrayList<>();
+            for (String gram : grams(query, GRAM_LENGTH)) {
+                Set<Integer> posting = grams.get(gram);
+                if (posting == null) {
+                    return Set.of();
+                }
+                postings.add(posting);
+            }
+            postings.sort(Comparator.comparingInt(Set::size));
+
+            Set<Integer> result = new HashSet<>();
+            for (int id : postings.get(0)) {
+                if (postings.stream().allMatch(posting -> posting.contains(id))
+                        && normalizedTexts.get(id).contains(query)) {
+                    result.add(id);
+                }
+            }
+            return result;
+        }
+
+        // id текстов со словом, начинающимся с prefix, или null, если их больше limit
+        private Set<Integer> complete(String prefix, int limit) {
+            Set<Integer> result = new HashSet<>();
+            for (Set<Integer> ids : completions.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                result.addAll(ids);
+                if (result.size() > limit) {
+                    return null;
+                }
+            }
+            return result;
+        }
+
+        // то же условие, что и у complete, но для одного текста
+        private boolean startsWord(int id, String prefix) {
+            String text = normalizedTexts.get(id);
+            if (text == null) {
+                return false;
+            }
+            for (int i = text.indexOf(prefix); i >= 0; i = text.indexOf(prefix, i + 1)) {
+                if (i == 0 || (Character.isLetterOrDigit(text.charAt(i))
+                        && !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String getText(int id) {
+            return texts.get(id);
+        }
+
+        private int size() {
+            return texts.size();
+        }
+
+        private void clear() {
+            texts.clear();
+            normalizedTexts.clear();
+            grams.clear();
+            completions.clear();
+        }
+    }
+}
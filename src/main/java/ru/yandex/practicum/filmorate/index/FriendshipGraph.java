@@ -0,0 +1,273 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.storage.DBFriendsStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Граф дружбы в памяти. Дружба односторонняя: для каждого пользователя хранятся отсортированные
+ * массивы id его друзей и подписчиков, то есть тех, кто добавил его в друзья.
+ * Общие друзья считаются пересечением массивов без обращения к базе, для пользователей
+ * с сильно различающимся числом друзей пересечение ищется двоичным поиском по длинному массиву.
+ * Индекс строится из таблицы friends при запуске и обновляется вместе с ней.
+ * Возможные друзья ищутся обходом на два шага: от друзей пользователя к их подписчикам.
+ * Друзья, на которых подписано больше hub-cap пользователей, при обходе пропускаются,
+ * поэтому время поиска ограничено числом друзей пользователя, умноженным на hub-cap.
+ */
+@Component
+public class FriendshipGraph implements MetricsSource {
+    private static final int[] EMPTY = SortedIntArrays.EMPTY;
+    // примерный размер записи HashMap с ключом Integer и заголовка массива
+    private static final long ENTRY_BYTES = 32 + 16 + 16;
+
+    private final DBFriendsStorage friendsStorage;
+    private final int hubCap;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, int[]> friends = new HashMap<>();
+    private final Map<Integer, int[]> followers = new HashMap<>();
+    private final AtomicLong intersections = new AtomicLong();
+    private final AtomicLong suggestCount = new AtomicLong();
+    private final AtomicLong suggestNanos = new AtomicLong();
+    private final AtomicLong skippedHubs = new AtomicLong();
+    private long edges;
+    private long lastRebuildMillis;
+
+    @Autowired
+    public FriendshipGraph(DBFriendsStorage friendsStorage,
+                           @Value("${filmorate.friends.suggestions.hub-cap:1000}") int hubCap) {
+        this.friendsStorage = friendsStorage;
+        this.hubCap = hubCap;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Map<Integer, Set<Integer>> allFollowers = friendsStorage.getFollowers();
+
+        Map<Integer, List<Integer>> allFriends = new HashMap<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : allFollowers.entrySet()) {
+            for (int followerId : entry.getValue()) {
+                allFriends.computeIfAbsent(followerId, id -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            friends.clear();
+            followers.clear();
+            edges = 0;
+            for (Map.Entry<Integer, List<Integer>> entry : allFriends.entrySet()) {
+                int[] userFriends = SortedIntArrays.toSortedArray(entry.getValue());
+                friends.put(entry.getKey(), userFriends);
+                edges += userFriends.length;
+            }
+            for (Map.Entry<Integer, Set<Integer>> entry : allFollowers.entrySet()) {
+                followers.put(entry.getKey(), SortedIntArrays.toSortedArray(entry.getValue()));
+            }
+            lastRebuildMillis = System.currentTimeMillis() - start;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean hasFriend(int userId, int friendId) {
+        lock.readLock().lock();
+        try {
+            return SortedIntArrays.contains(friends.getOrDefault(userId, EMPTY), friendId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // массивы не изменяются после публикации, поэтому возвращаются без копирования
+    public int[] getFriends(int userId) {
+        lock.readLock().lock();
+        try {
+            return friends.getOrDefault(userId, EMPTY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int[] getFollowers(int userId) {
+        lock.readLock().lock();
+        try {
+            return followers.getOrDefault(userId, EMPTY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDegree(int userId) {
+        return getFriends(userId).length;
+    }
+
+    public int getFollowersCount(int userId) {
+        return getFollowers(userId).length;
+    }
+
+    public int[] getCommonFriends(int userId, int otherId) {
+        intersections.incrementAndGet();
+        return SortedIntArrays.intersection(getFriends(userId), getFriends(otherId));
+    }
+
+    public int countCommonFriends(int userId, int otherId) {
+        intersections.incrementAndGet();
+        return SortedIntArrays.intersectionSize(getFriends(userId), getFriends(otherId));
+    }
+
+    // не больше count пользователей, которых нет в друзьях, по убыванию числа общих друзей, при равенстве - по id
+    public List<Integer> suggestFriends(int userId, int count) {
+        long start = System.nanoTime();
+        Map<Integer, Integer> mutualCounts = new HashMap<>();
+        int[] userFriends;
+
+        lock.readLock().lock();
+        try {
+            userFriends = friends.getOrDefault(userId, EMPTY);
+            for (int friendId : userFriends) {
+                int[] candidates = followers.getOrDefault(friendId, EMPTY);
+                if (candidates.length > hubCap) {
+                    skippedHubs.incrementAndGet();
+                    continue;
+                }
+                for (int candidateId : candidates) {
+                    mutualCounts.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Comparator<Map.Entry<Integer, Integer>> order = Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        // в куче лежат count лучших кандидатов, на вершине - худший из них
+        PriorityQueue<Map.Entry<Integer, Integer>> top = new PriorityQueue<>(order.reversed());
+        for (Map.Entry<Integer, Integer> entry : mutualCounts.entrySet()) {
+            int candidateId = entry.getKey();
+            if (candidateId == userId || SortedIntArrays.contains(userFriends, candidateId)) {
+                continue;
+            }
+            top.add(entry);
+            if (top.size() > count) {
+                top.poll();
+            }
+        }
+
+        List<Map.Entry<Integer, Integer>> result = new ArrayList<>(top);
+        result.sort(order);
+        suggestCount.incrementAndGet();
+        suggestNanos.addAndGet(System.nanoTime() - start);
+
+        List<Integer> userIds = new ArrayList<>(result.size());
+        for (Map.Entry<Integer, Integer> entry : result) {
+            userIds.add(entry.getKey());
+        }
+        return userIds;
+    }
+
+    public void addFriend(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            int[] userFriends = friends.getOrDefault(userId, EMPTY);
+            int[] updated = SortedIntArrays.insert(userFriends, friendId);
+            if (updated != userFriends) {
+                friends.put(userId, updated);
+                followers.put(friendId, SortedIntArrays.insert(followers.getOrDefault(friendId, EMPTY), userId));
+                ++edges;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void deleteFriend(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            removeEdge(userId, friendId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // удаляет все связи пользователя в обе стороны, как DBFriendsStorage.deleteFriends
+    public void removeUser(int userId) {
+        lock.writeLock().lock();
+        try {
+            for (int friendId : friends.getOrDefault(userId, EMPTY)) {
+                removeEdge(userId, friendId);
+            }
+            for (int followerId : followers.getOrDefault(userId, EMPTY)) {
+                removeEdge(followerId, userId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "friendshipGraph";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            int maxDegree = 0;
+            for (int[] userFriends : friends.values()) {
+                maxDegree = Math.max(maxDegree, userFriends.length);
+            }
+            int maxFollowers = 0;
+            for (int[] userFollowers : followers.values()) {
+                maxFollowers = Math.max(maxFollowers, userFollowers.length);
+            }
+
+            metrics.put("users", friends.size());
+            metrics.put("edges", edges);
+            metrics.put("maxDegree", maxDegree);
+            metrics.put("maxFollowers", maxFollowers);
+            // каждая связь хранится дважды: в друзьях и в подписчиках
+            metrics.put("memoryBytes", (friends.size() + followers.size()) * ENTRY_BYTES + edges * 2 * Integer.BYTES);
+            metrics.put("lastRebuildMillis", lastRebuildMillis);
+        } finally {
+            lock.readLock().unlock();
+        }
+        long count = suggestCount.get();
+        metrics.put("intersections", intersections.get());
+        metrics.put("hubCap", hubCap);
+        metrics.put("suggestCount", count);
+        metrics.put("suggestAvgMicros", count == 0 ? 0 : suggestNanos.get() / count / 1000);
+        metrics.put("skippedHubs", skippedHubs.get());
+        return metrics;
+    }
+
+    private void removeEdge(int userId, int friendId) {
+        int[] userFriends = friends.getOrDefault(userId, EMPTY);
+        int[] updated = SortedIntArrays.remove(userFriends, friendId);
+        if (updated == userFriends) {
+            return;
+        }
+        putOrRemove(friends, userId, updated);
+        putOrRemove(followers, friendId, SortedIntArrays.remove(followers.getOrDefault(friendId, EMPTY), userId));
+        --edges;
+    }
+
+    private static void putOrRemove(Map<Integer, int[]> map, int key, int[] value) {
+        if (value.length == 0) {
+            map.remove(key);
+        } else {
+            map.put(key, value);
+        }
+    }
+}
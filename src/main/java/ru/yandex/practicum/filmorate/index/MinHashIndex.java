@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.*;
+
+/**
+ * Индекс приближённого поиска похожих пользователей по MinHash-сигнатурам множеств лайкнутых фильмов.
+ * Сигнатура из bands * rows значений делится на полосы, пользователи с совпадающей полосой
+ * попадают в одну корзину и считаются кандидатами в соседи. Чем больше полос и меньше строк в полосе,
+ * тем ниже порог сходства по Жаккару, при котором пользователи находят друг друга.
+ * Класс не потокобезопасен, синхронизацию обеспечивает {@link RecommendationEngine}.
+ */
+public class MinHashIndex {
+    private static final long PRIME = (1L << 31) - 1;
+    private static final long SEED = 20230415L;
+
+    private final int bands;
+    private final int rows;
+    private final long[] a;
+    private final long[] b;
+    private final Map<Integer, int[]> signatures = new HashMap<>();
+    private final Map<Long, Set<Integer>> buckets = new HashMap<>();
+
+    public MinHashIndex(int bands, int rows) {
+        this.bands = bands;
+        this.rows = rows;
+        this.a = new long[bands * rows];
+        this.b = new long[bands * rows];
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < a.length; ++i) {
+            a[i] = 1 + random.nextInt((int) PRIME - 1);
+            b[i] = random.nextInt((int) PRIME);
+        }
+    }
+
+    // пользователи, которые хотя бы в одной полосе попали в одну корзину с пользователем
+    public Set<Integer> getCandidates(int userId) {
+        int[] signature = signatures.get(userId);
+        if (signature == null) {
+            return Set.of();
+        }
+
+        Set<Integer> result = new HashSet<>();
+        for (int band = 0; band < bands; ++band) {
+            result.addAll(buckets.getOrDefault(bucketKey(signature, band), Set.of()));
+        }
+        result.remove(userId);
+        return result;
+    }
+
+    // добавление фильма только уменьшает значения сигнатуры, поэтому пересчёт не нужен
+    public void addFilm(int userId, int filmId) {
+        int[] signature = signatures.get(userId);
+        int[] updated = signature == null ? emptySignature() : signature.clone();
+
+        for (int i = 0; i < updated.length; ++i) {
+            updated[i] = Math.min(updated[i], hash(i, filmId));
+        }
+        replace(userId, signature, updated);
+    }
+
+    // пересчитывает сигнатуру по всем фильмам пользователя, например после удаления лайка
+    public void setFilms(int userId, int[] films) {
+        int[] signature = signatures.get(userId);
+
+        if (films.length == 0) {
+            replace(userId, signature, null);
+            return;
+        }
+
+        int[] updated = emptySignature();
+        for (int filmId : films) {
+            for (int i = 0; i < updated.length; ++i) {
+                updated[i] = Math.min(updated[i], hash(i, filmId));
+            }
+        }
+        replace(userId, signature, updated);
+    }
+
+    public int size() {
+        return signatures.size();
+    }
+
+    public int bucketsCount() {
+        return buckets.size();
+    }
+
+    public void clear() {
+        signatures.clear();
+        buckets.clear();
+    }
+
+    private void replace(int userId, int[] oldSignature, int[] newSignature) {
+        if (oldSignature != null) {
+            for (int band = 0; band < bands; ++band) {
+                long key = bucketKey(oldSignature, band);
+                Set<Integer> bucket = buckets.get(key);
+                bucket.remove(userId);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+            signatures.remove(userId);
+        }
+        if (newSignature != null) {
+            for (int band = 0; band < bands; ++band) {
+                buckets.computeIfAbsent(bucketKey(newSignature, band), key -> new HashSet<>()).add(userId);
+            }
+            signatures.put(userId, newSignature);
+        }
+    }
+
+    private int[] emptySignature() {
+        int[] signature = new int[bands * rows];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        return signature;
+    }
+
+    private int hash(int function, int value) {
+        return (int) ((a[function] * value + b[function]) % PRIME);
+    }
+
+    private long bucketKey(int[] signature, int band) {
+        long key = band;
+        for (int row = 0; row < rows; ++row) {
+            key = key * 0x9E3779B97F4A7C15L + signature[band * rows + row];
+        }
+        return key;
+    }
+}
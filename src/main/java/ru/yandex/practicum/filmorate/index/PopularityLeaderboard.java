@@ -0,0 +1,286 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.DBFilmGenreStorage;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который хранится в памяти.
+ * Фильмы упорядочены по убыванию лайков, при равенстве - по возрастанию id.
+ * Помимо общего рейтинга поддерживаются рейтинги по жанрам и по годам выпуска,
+ * изменение количества лайков обновляет все рейтинги фильма за O(log n).
+ */
+@Component
+@Slf4j
+public class PopularityLeaderboard implements MetricsSource {
+    private static final Comparator<Entry> RANK_ORDER = Comparator.comparingInt((Entry entry) -> -entry.likes)
+            .thenComparingInt(entry -> entry.filmId);
+
+    private final FilmStorage filmStorage;
+    private final DBFilmGenreStorage filmGenreStorage;
+    private final DBLikesStorage likesStorage;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> overall = new TreeSet<>(RANK_ORDER);
+    private final Map<Integer, NavigableSet<Entry>> byGenre = new HashMap<>();
+    private final Map<Integer, NavigableSet<Entry>> byYear = new HashMap<>();
+    private long lastRebuildMillis;
+    private long lastRebuildTimestamp;
+
+    @Autowired
+    public PopularityLeaderboard(@Qualifier("dBFilmStorage") FilmStorage filmStorage,
+                                 DBFilmGenreStorage filmGenreStorage,
+                                 DBLikesStorage likesStorage) {
+        this.filmStorage = filmStorage;
+        this.filmGenreStorage = filmGenreStorage;
+        this.likesStorage = likesStorage;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Film> films = new ArrayList<>(filmStorage.getAllFilms().values());
+        Map<Integer, Set<Integer>> filmGenreIds = filmGenreStorage.getFilmGenreIds(films);
+        Map<Integer, Integer> likesCount = likesStorage.getLikesCount();
+
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            overall.clear();
+            byGenre.clear();
+            byYear.clear();
+
+            for (Film film : films) {
+                insert(new Entry(film.getId(),
+                        likesCount.getOrDefault(film.getId(), 0),
+                        film.getReleaseDate().getYear(),
+                        Set.copyOf(filmGenreIds.get(film.getId()))));
+            }
+
+            lastRebuildMillis = System.currentTimeMillis() - start;
+            lastRebuildTimestamp = System.currentTimeMillis();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Рейтинг популярности фильмов перестроен: {} фильмов за {} мс", films.size(), lastRebuildMillis);
+    }
+
+    // возвращает id самых популярных фильмов, genreId и year равные 0 означают отсутствие фильтра
+    public List<Integer> getMostLiked(int count, int genreId, int year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> ranking = overall;
+
+            if (genreId != 0) {
+                ranking = byGenre.getOrDefault(genreId, Collections.emptyNavigableSet());
+            }
+            if (year != 0) {
+                NavigableSet<Entry> yearRanking = byYear.getOrDefault(year, Collections.emptyNavigableSet());
+                if (genreId == 0 || yearRanking.size() < ranking.size()) {
+                    ranking = yearRanking;
+                }
+            }
+
+            List<Integer> result = new ArrayList<>(Math.min(Math.max(count, 0), ranking.size()));
+            for (Entry entry : ranking) {
+                if (result.size() >= count) {
+                    break;
+                }
+                if ((genreId == 0 || entry.genreIds.contains(genreId)) && (year == 0 || entry.year == year)) {
+                    result.add(entry.filmId);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // id самых популярных фильмов, для которых выполняется filter. Рейтинг обходится от начала
+    // и обход останавливается на count-м подходящем фильме
+    public List<Integer> getMostLiked(int count, IntPredicate filter) {
+        lock.readLock().lock();
+        try {
+            List<Integer> result = new ArrayList<>();
+            for (Entry entry : overall) {
+                if (result.size() >= count) {
+                    break;
+                }
+                if (filter.test(entry.filmId)) {
+                    result.add(entry.filmId);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getLikes(int filmId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(filmId);
+            return entry == null ? 0 : entry.likes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // упорядочивает фильмы так же, как в рейтинге: по убыванию лайков, при равенстве - по возрастанию id
+    public List<Integer> rank(Collection<Integer> filmIds) {
+        lock.readLock().lock();
+        try {
+            return filmIds.stream()
+                    .map(filmId -> entries.getOrDefault(filmId, new Entry(filmId, 0, 0, Collections.emptySet())))
+                    .sorted(RANK_ORDER)
+                    .map(entry -> entry.filmId)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void putFilm(Film film) {
+        Entry entry = new Entry(film.getId(),
+                film.getUserLikes() == null ? 0 : film.getUserLikes().size(),
+                film.getReleaseDate().getYear(),
+                genreIds(film.getGenres()));
+
+        lock.writeLock().lock();
+        try {
+            remove(film.getId());
+            insert(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int filmId) {
+        lock.writeLock().lock();
+        try {
+            remove(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addLike(int filmId) {
+        changeLikes(filmId, 1);
+    }
+
+    public void removeLike(int filmId) {
+        changeLikes(filmId, -1);
+    }
+
+    public void removeLikes(Collection<Integer> filmIds) {
+        for (int filmId : filmIds) {
+            changeLikes(filmId, -1);
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "popularityLeaderboard";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", size());
+        metrics.put("lastRebuildMillis", lastRebuildMillis);
+        metrics.put("lastRebuildTimestamp", lastRebuildTimestamp);
+        return metrics;
+    }
+
+    private void changeLikes(int filmId, int delta) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = remove(filmId);
+            if (entry != null) {
+                insert(new Entry(filmId, Math.max(entry.likes + delta, 0), entry.year, entry.genreIds));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(Entry entry) {
+        entries.put(entry.filmId, entry);
+        overall.add(entry);
+        byYear.computeIfAbsent(entry.year, year -> new TreeSet<>(RANK_ORDER)).add(entry);
+        for (int genreId : entry.genreIds) {
+            byGenre.computeIfAbsent(genreId, id -> new TreeSet<>(RANK_ORDER)).add(entry);
+        }
+    }
+
+    private Entry remove(int filmId) {
+        Entry entry = entries.remove(filmId);
+
+        if (entry == null) {
+            return null;
+        }
+
+        overall.remove(entry);
+        removeFromRanking(byYear, entry.year, entry);
+        for (int genreId : entry.genreIds) {
+            removeFromRanking(byGenre, genreId, entry);
+        }
+        return entry;
+    }
+
+    private static void removeFromRanking(Map<Integer, NavigableSet<Entry>> rankings, int key, Entry entry) {
+        NavigableSet<Entry> ranking = rankings.get(key);
+        if (ranking != null) {
+            ranking.remove(entry);
+            if (ranking.isEmpty()) {
+                rankings.remove(key);
+            }
+        }
+    }
+
+    private static Set<Integer> genreIds(Set<Genre> genres) {
+        if (genres == null || genres.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return genres.stream().map(Genre::getId).collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static class Entry {
+        private final int filmId;
+        private final int likes;
+        private final int year;
+        private final Set<Integer> genreIds;
+
+        private Entry(int filmId, int likes, int year, Set<Integer> genreIds) {
+            this.filmId = filmId;
+            this.likes = likes;
+            this.year = year;
+            this.genreIds = genreIds;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш готовых рекомендаций по id пользователя поверх {@link RecommendationEngine}.
+ * Хранит не больше max-size пользователей, при переполнении вытесняется дольше всех не читавшийся.
+ * Изменение лайков помечает устаревшими записи самого пользователя и пользователей, чьи рекомендации
+ * от него зависят. Поиск зависящих пользователей выполняется фоновым потоком, а не в запросе лайка.
+ * Устаревшие записи пользователей, читавших рекомендации в пределах ttl, пересчитываются пулом фоновых потоков
+ * с ограниченной очередью, остальные и не поместившиеся в очередь пересчитываются при следующем чтении.
+ * Записи старше ttl считаются устаревшими и периодически пересчитываются в фоне по тому же правилу.
+ * Результат сохраняется только если с начала расчёта лайки пользователя не менялись,
+ * иначе параллельное чтение могло бы вернуть в кэш устаревшие рекомендации.
+ */
+@Component
+@Slf4j
+public class RecommendationCache implements MetricsSource {
+    // количество счётчиков изменений, пользователи распределяются по ним по остатку от id
+    private static final int STRIPES = 256;
+
+    private final RecommendationEngine recommendationEngine;
+    private final long ttlMillis;
+    private final boolean serveStale;
+    private final int maxSize;
+    private final ThreadPoolExecutor refreshExecutor;
+    private final ThreadPoolExecutor invalidateExecutor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long[] versions = new long[STRIPES];
+    private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong refreshed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Autowired
+    public RecommendationCache(RecommendationEngine recommendationEngine,
+                               @Value("${filmorate.recommendations.cache.ttl-ms:60000}") long ttlMillis,
+                               @Value("${filmorate.recommendations.cache.serve-stale:false}") boolean serveStale,
+                               @Value("${filmorate.recommendations.cache.max-size:100000}") int maxSize,
+                               @Value("${filmorate.recommendations.cache.refresh-threads:2}") int refreshThreads,
+                               @Value("${filmorate.recommendations.cache.refresh-queue:1000}") int refreshQueue) {
+        this.recommendationEngine = recommendationEngine;
+        this.ttlMillis = ttlMillis;
+        this.serveStale = serveStale;
+        this.maxSize = maxSize;
+        this.refreshExecutor = newExecutor(refreshThreads, refreshQueue, "recommendation-refresh");
+        this.invalidateExecutor = newExecutor(1, refreshQueue, "recommendation-invalidate");
+    }
+
+    public List<Integer> getRecommendations(int userId) {
+        long stamp;
+        lock.lock();
+        try {
+            Entry entry = entries.get(userId);
+            if (entry != null) {
+                entry.readAt = System.currentTimeMillis();
+                if (!isStale(entry)) {
+                    hits.incrementAndGet();
+                    return entry.filmIds;
+                }
+                if (serveStale) {
+                    staleHits.incrementAndGet();
+                    scheduleRefresh(userId);
+                    return entry.filmIds;
+                }
+            }
+            stamp = versions[stripe(userId)];
+        } finally {
+            lock.unlock();
+        }
+
+        misses.incrementAndGet();
+        return compute(userId, stamp);
+    }
+
+    // вызывается после изменения лайка пользователя userId к фильму filmId
+    public void invalidateLike(int userId, int filmId) {
+        markStale(userId);
+        try {
+            invalidateExecutor.execute(() -> invalidateRelated(userId, filmId));
+        } catch (RejectedExecutionException e) {
+            // при переполненной очереди зависящие пользователи помечаются в потоке запроса
+            invalidateRelated(userId, filmId);
+        }
+    }
+
+    // вызывается после изменений, затрагивающих лайки многих пользователей: удаления фильма или пользователя
+    public void invalidateAll() {
+        List<Integer> refreshIds = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            for (int i = 0; i < STRIPES; ++i) {
+                ++versions[i];
+            }
+            for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+                markStale(entry.getValue(), now);
+                if (isRecentlyRead(entry.getValue(), now)) {
+                    refreshIds.add(entry.getKey());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        refreshIds.forEach(this::scheduleRefresh);
+    }
+
+    public void refresh(int userId) {
+        queued.remove(userId);
+        long stamp;
+        lock.lock();
+        try {
+            Entry entry = entries.get(userId);
+            if (entry == null || !isStale(entry)) {
+                return;
+            }
+            stamp = versions[stripe(userId)];
+        } finally {
+            lock.unlock();
+        }
+        compute(userId, stamp);
+        refreshed.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.cache.ttl-ms:60000}")
+    public void refreshExpired() {
+        List<Integer> refreshIds = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+                if (isStale(entry.getValue()) && isRecentlyRead(entry.getValue(), now)) {
+                    refreshIds.add(entry.getKey());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        refreshIds.forEach(this::scheduleRefresh);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        invalidateExecutor.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "recommendationCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long now = System.currentTimeMillis();
+        int size;
+        int stale = 0;
+        long oldestStaleMillis = 0;
+
+        lock.lock();
+        try {
+            size = entries.size();
+            for (Entry entry : entries.values()) {
+                if (isStale(entry)) {
+                    ++stale;
+                    long staleSince = entry.staleSince != 0 ? entry.staleSince : entry.computedAt + ttlMillis;
+                    oldestStaleMillis = Math.max(oldestStaleMillis, now - staleSince);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        long requests = hits.get() + staleHits.get() + misses.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", size);
+        metrics.put("maxSize", maxSize);
+        metrics.put("hits", hits.get());
+        metrics.put("staleHits", staleHits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("hitRate", requests == 0 ? 0.0 : (double) (hits.get() + staleHits.get()) / requests);
+        metrics.put("evictions", evictions.get());
+        metrics.put("staleEntries", stale);
+        metrics.put("oldestStaleMillis", oldestStaleMillis);
+        metrics.put("refreshQueueDepth", refreshExecutor.getQueue().size());
+        metrics.put("invalidateQueueDepth", invalidateExecutor.getQueue().size());
+        metrics.put("refreshed", refreshed.get());
+        metrics.put("rejectedRefreshes", rejected.get());
+        return metrics;
+    }
+
+    // stamp берётся до расчёта, результат сохраняется, только если с тех пор пользователя не помечали
+    private List<Integer> compute(int userId, long stamp) {
+        List<Integer> filmIds = Collections.unmodifiableList(recommendationEngine.recommend(userId));
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            if (versions[stripe(userId)] == stamp) {
+                Entry previous = entries.get(userId);
+                entries.put(userId, new Entry(filmIds, now, previous == null ? now : previous.readAt));
+                Iterator<Integer> iterator = entries.keySet().iterator();
+                while (entries.size() > maxSize && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return filmIds;
+    }
+
+    private void invalidateRelated(int userId, int filmId) {
+        for (int relatedId : recommendationEngine.getRelatedUsers(userId, filmId)) {
+            markStale(relatedId);
+        }
+    }
+
+    // записи создаются только при чтении, пользователь без записи лишь сбрасывает начатый расчёт
+    private void markStale(int userId) {
+        long now = System.currentTimeMillis();
+        boolean refresh;
+        lock.lock();
+        try {
+            ++versions[stripe(userId)];
+            Entry entry = entries.get(userId);
+            if (entry == null) {
+                return;
+            }
+            markStale(entry, now);
+            refresh = isRecentlyRead(entry, now);
+        } finally {
+            lock.unlock();
+        }
+        if (refresh) {
+            scheduleRefresh(userId);
+        }
+    }
+
+    private static void markStale(Entry entry, long now) {
+        if (entry.staleSince == 0) {
+            entry.staleSince = now;
+        }
+    }
+
+    private void scheduleRefresh(int userId) {
+        if (!queued.add(userId)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> refresh(userId));
+        } catch (RejectedExecutionException e) {
+            queued.remove(userId);
+            rejected.incrementAndGet();
+            log.debug("Очередь пересчёта рекомендаций заполнена, пользователь с id = {} будет пересчитан при чтении",
+                    userId);
+        }
+    }
+
+    private boolean isStale(Entry entry) {
+        return entry.staleSince != 0 || System.currentTimeMillis() - entry.computedAt > ttlMillis;
+    }
+
+    // рекомендации пользователей, не читавших их дольше ttl, в фоне не пересчитываются
+    private boolean isRecentlyRead(Entry entry, long now) {
+        return now - entry.readAt <= ttlMillis;
+    }
+
+    private static int stripe(int userId) {
+        return Math.floorMod(userId, STRIPES);
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, int queueSize, String name) {
+        return new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // поля, кроме filmIds и computedAt, изменяются под блокировкой кэша
+    private static class Entry {
+        private final List<Integer> filmIds;
+        private final long computedAt;
+        private long staleSince;
+        private long readAt;
+
+        private Entry(List<Integer> filmIds, long computedAt, long readAt) {
+            this.filmIds = filmIds;
+            this.computedAt = computedAt;
+            this.readAt = readAt;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рекомендации фильмов на основе лайков похожих пользователей.
+ * Лайки хранятся в памяти в виде отсортированных массивов id: фильмы каждого пользователя
+ * и пользователи каждого фильма. Пересечение лайков пользователя со всеми остальными считается
+ * проходом по пользователям его фильмов, то есть без перебора всех пользователей.
+ * Рекомендуются фильмы K самых похожих пользователей, которых у пользователя ещё нет,
+ * вес фильма - сумма пересечений соседей, которые его лайкнули.
+ * Пользователь с пересечением 0 тоже может быть соседом, если более похожих не хватает, поэтому
+ * при K = 1 выдача совпадает с прежним алгоритмом: фильмы пользователя с наибольшим пересечением,
+ * при равенстве - с наименьшим id.
+ * Если задано количество полос LSH, кандидаты в соседи берутся из {@link MinHashIndex}, и точное пересечение
+ * считается только для них. Выдача в этом случае приближённая, поэтому часть запросов дополнительно
+ * выполняется точным алгоритмом для оценки полноты и времени обоих вариантов.
+ */
+@Component
+@Slf4j
+public class RecommendationEngine implements MetricsSource {
+    private static final int[] EMPTY = SortedIntArrays.EMPTY;
+
+    private final DBLikesStorage likesStorage;
+    private final int neighbours;
+    private final MinHashIndex minHashIndex;
+    private final int recallSampleRate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<Integer, int[]> userFilms = new TreeMap<>();
+    private final Map<Integer, int[]> filmUsers = new HashMap<>();
+    private final AtomicLong recommendCount = new AtomicLong();
+    private final AtomicLong recommendNanos = new AtomicLong();
+    private final AtomicLong lshFallbacks = new AtomicLong();
+    private final AtomicLong recallSamples = new AtomicLong();
+    private final AtomicLong recallFound = new AtomicLong();
+    private final AtomicLong recallExpected = new AtomicLong();
+    private final AtomicLong sampledLshNanos = new AtomicLong();
+    private final AtomicLong sampledExactNanos = new AtomicLong();
+    private int likesCount;
+    private long lastRebuildMillis;
+
+    @Autowired
+    public RecommendationEngine(DBLikesStorage likesStorage,
+                                @Value("${filmorate.recommendations.neighbours:1}") int neighbours,
+                                @Value("${filmorate.recommendations.lsh.bands:0}") int lshBands,
+                                @Value("${filmorate.recommendations.lsh.rows:2}") int lshRows,
+                                @Value("${filmorate.recommendations.lsh.recall-sample-rate:100}") int recallSampleRate) {
+        this.likesStorage = likesStorage;
+        this.neighbours = Math.max(neighbours, 1);
+        this.minHashIndex = lshBands > 0 ? new MinHashIndex(lshBands, Math.max(lshRows, 1)) : null;
+        this.recallSampleRate = recallSampleRate;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Map<Integer, List<Integer>> usersLikes = likesStorage.getUsersLikes();
+
+        lock.writeLock().lock();
+        try {
+            userFilms.clear();
+            filmUsers.clear();
+            likesCount = 0;
+
+            Map<Integer, List<Integer>> filmsLikes = new HashMap<>();
+            for (Map.Entry<Integer, List<Integer>> entry : usersLikes.entrySet()) {
+                userFilms.put(entry.getKey(), SortedIntArrays.toSortedArray(entry.getValue()));
+                likesCount += entry.getValue().size();
+                for (int filmId : entry.getValue()) {
+                    filmsLikes.computeIfAbsent(filmId, id -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+            for (Map.Entry<Integer, List<Integer>> entry : filmsLikes.entrySet()) {
+                filmUsers.put(entry.getKey(), SortedIntArrays.toSortedArray(entry.getValue()));
+            }
+            if (minHashIndex != null) {
+                minHashIndex.clear();
+                for (Map.Entry<Integer, int[]> entry : userFilms.entrySet()) {
+                    minHashIndex.setFilms(entry.getKey(), entry.getValue());
+                }
+            }
+
+            lastRebuildMillis = System.currentTimeMillis() - start;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Индекс рекомендаций перестроен: {} пользователей, {} лайков за {} мс",
+                usersLikes.size(), likesCount, lastRebuildMillis);
+    }
+
+    // возвращает id рекомендованных фильмов по убыванию веса, при равенстве - по возрастанию id
+    public List<Integer> recommend(int userId) {
+        long start = System.nanoTime();
+        List<Integer> result = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            int[] films = userFilms.getOrDefault(userId, EMPTY);
+
+            if (films.length != 0) {
+                Map<Integer, Integer> overlaps = minHashIndex == null
+                        ? getOverlaps(userId, films)
+                        : getCandidateOverlaps(userId, films);
+                Map<Integer, Integer> scores = new HashMap<>();
+
+                for (Map.Entry<Integer, Integer> neighbour : getNeighbours(userId, overlaps).entrySet()) {
+                    for (int filmId : SortedIntArrays.difference(userFilms.get(neighbour.getKey()), films)) {
+                        scores.merge(filmId, neighbour.getValue(), Integer::sum);
+                    }
+                }
+
+                scores.entrySet().stream()
+                        .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                                .thenComparing(Map.Entry.comparingByKey()))
+                        .forEach(entry -> result.add(entry.getKey()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        recommendCount.incrementAndGet();
+        recommendNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    // другие пользователи, у которых есть хотя бы один общий лайк с пользователем, и пользователи фильма
+    public Set<Integer> getRelatedUsers(int userId, int filmId) {
+        lock.readLock().lock();
+        try {
+            Set<Integer> result = new HashSet<>(getOverlaps(userId, userFilms.getOrDefault(userId, EMPTY)).keySet());
+            for (int otherId : filmUsers.getOrDefault(filmId, EMPTY)) {
+                result.add(otherId);
+            }
+            result.remove(userId);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void addLike(int userId, int filmId) {
+        lock.writeLock().lock();
+        try {
+            int[] films = userFilms.getOrDefault(userId, EMPTY);
+            int[] updated = SortedIntArrays.insert(films, filmId);
+            if (updated != films) {
+                userFilms.put(userId, updated);
+                filmUsers.put(filmId, SortedIntArrays.insert(filmUsers.getOrDefault(filmId, EMPTY), userId));
+                ++likesCount;
+                if (minHashIndex != null) {
+                    minHashIndex.addFilm(userId, filmId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(int userId, int filmId) {
+        lock.writeLock().lock();
+        try {
+            removeLikeEntries(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // заменяет лайки фильма, например после обновления фильма вместе со списком лайков
+    public void setFilmLikes(int filmId, Collection<Integer> userIds) {
+        lock.writeLock().lock();
+        try {
+            removeFilmEntries(filmId);
+            for (int userId : userIds) {
+                userFilms.put(userId, SortedIntArrays.insert(userFilms.getOrDefault(userId, EMPTY), filmId));
+                ++likesCount;
+                if (minHashIndex != null) {
+                    minHashIndex.addFilm(userId, filmId);
+                }
+            }
+            if (!userIds.isEmpty()) {
+                filmUsers.put(filmId, SortedIntArrays.toSortedArray(userIds));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int filmId) {
+        lock.writeLock().lock();
+        try {
+            removeFilmEntries(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(int userId) {
+        lock.writeLock().lock();
+        try {
+            for (int filmId : userFilms.getOrDefault(userId, EMPTY)) {
+                removeLikeEntries(userId, filmId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "recommendationEngine";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            metrics.put("users", userFilms.size());
+            metrics.put("films", filmUsers.size());
+            metrics.put("likes", likesCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+        long count = recommendCount.get();
+        metrics.put("neighbours", neighbours);
+        metrics.put("recommendCount", count);
+        metrics.put("recommendAvgMicros", count == 0 ? 0 : recommendNanos.get() / count / 1000);
+        metrics.put("lastRebuildMillis", lastRebuildMillis);
+        if (minHashIndex != null) {
+            long samples = recallSamples.get();
+            metrics.put("lshFallbacks", lshFallbacks.get());
+            metrics.put("recallSamples", samples);
+            metrics.put("recall", recallExpected.get() == 0 ? 1.0 : (double) recallFound.get() / recallExpected.get());
+            metrics.put("sampledLshAvgMicros", samples == 0 ? 0 : sampledLshNanos.get() / samples / 1000);
+            metrics.put("sampledExactAvgMicros", samples == 0 ? 0 : sampledExactNanos.get() / samples / 1000);
+        }
+        return metrics;
+    }
+
+    // количество общих лайков с каждым пользователем, у которого есть хотя бы один общий фильм
+    private Map<Integer, Integer> getOverlaps(int userId, int[] films) {
+        Map<Integer, Integer> overlaps = new HashMap<>();
+        for (int filmId : films) {
+            for (int otherId : filmUsers.getOrDefault(filmId, EMPTY)) {
+                if (otherId != userId) {
+                    overlaps.merge(otherId, 1, Integer::sum);
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    // точное пересечение только с кандидатами из LSH; если кандидатов нет, используется полный алгоритм
+    private Map<Integer, Integer> getCandidateOverlaps(int userId, int[] films) {
+        long start = System.nanoTime();
+        Map<Integer, Integer> overlaps = new HashMap<>();
+
+        for (int candidateId : minHashIndex.getCandidates(userId)) {
+            int overlap = SortedIntArrays.intersectionSize(films, userFilms.get(candidateId));
+            if (overlap > 0) {
+                overlaps.put(candidateId, overlap);
+            }
+        }
+
+        if (overlaps.isEmpty()) {
+            lshFallbacks.incrementAndGet();
+            return getOverlaps(userId, films);
+        }
+
+        if (recallSampleRate > 0 && recommendCount.get() % recallSampleRate == 0) {
+            long lshNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            Set<Integer> expected = getNeighbours(userId, getOverlaps(userId, films)).keySet();
+            sampledExactNanos.addAndGet(System.nanoTime() - start);
+            sampledLshNanos.addAndGet(lshNanos);
+
+            Set<Integer> found = new HashSet<>(getNeighbours(userId, overlaps).keySet());
+            found.retainAll(expected);
+            recallSamples.incrementAndGet();
+            recallExpected.addAndGet(expected.size());
+            recallFound.addAndGet(found.size());
+        }
+        return overlaps;
+    }
+
+    // K пользователей с наибольшим пересечением, при равенстве - с наименьшим id;
+    // если пользователей с общими лайками меньше K, добавляются остальные по возрастанию id
+    private Map<Integer, Integer> getNeighbours(int userId, Map<Integer, Integer> overlaps) {
+        Map<Integer, Integer> result = new LinkedHashMap<>();
+
+        overlaps.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(neighbours)
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+
+        for (int otherId : userFilms.keySet()) {
+            if (result.size() >= neighbours) {
+                break;
+            }
+            if (otherId != userId && !result.containsKey(otherId)) {
+                result.put(otherId, 0);
+            }
+        }
+        return result;
+    }
+
+    private void removeLikeEntries(int userId, int filmId) {
+        int[] films = userFilms.get(userId);
+        if (films == null) {
+            return;
+        }
+
+        int[] updated = SortedIntArrays.remove(films, filmId);
+        if (updated == films) {
+            return;
+        }
+
+        if (updated.length == 0) {
+            userFilms.remove(userId);
+        } else {
+            userFilms.put(userId, updated);
+        }
+        if (minHashIndex != null) {
+            minHashIndex.setFilms(userId, updated);
+        }
+
+        int[] users = SortedIntArrays.remove(filmUsers.getOrDefault(filmId, EMPTY), userId);
+        if (users.length == 0) {
+            filmUsers.remove(filmId);
+        } else {
+            filmUsers.put(filmId, users);
+        }
+        --likesCount;
+    }
+
+    private void removeFilmEntries(int filmId) {
+        for (int userId : filmUsers.getOrDefault(filmId, EMPTY)) {
+            removeLikeEntries(userId, filmId);
+        }
+    }
+}
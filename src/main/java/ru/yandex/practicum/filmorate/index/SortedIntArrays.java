@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Операции над отсортированными по возрастанию массивами id без повторов.
+ * Массивы не изменяются: операции, меняющие состав, возвращают новый массив.
+ */
+final class SortedIntArrays {
+    static final int[] EMPTY = new int[0];
+
+    // во сколько раз один массив должен быть длиннее другого, чтобы вместо слияния искать двоичным поиском
+    private static final int GALLOP_RATIO = 16;
+
+    private SortedIntArrays() {
+    }
+
+    static int intersectionSize(int[] first, int[] second) {
+        return intersect(first, second, null);
+    }
+
+    static int[] intersection(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        return Arrays.copyOf(result, intersect(first, second, result));
+    }
+
+    // элементы отсортированного массива from, которых нет в отсортированном массиве exclude
+    static int[] difference(int[] from, int[] exclude) {
+        int[] result = new int[from.length];
+        int size = 0;
+        int j = 0;
+
+        for (int value : from) {
+            while (j < exclude.length && exclude[j] < value) {
+                ++j;
+            }
+            if (j == exclude.length || exclude[j] != value) {
+                result[size++] = value;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    static boolean contains(int[] array, int value) {
+        return Arrays.binarySearch(array, value) >= 0;
+    }
+
+    // возвращает тот же массив, если значение уже есть
+    static int[] insert(int[] array, int value) {
+        int position = Arrays.binarySearch(array, value);
+        if (position >= 0) {
+            return array;
+        }
+
+        position = -position - 1;
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, position);
+        result[position] = value;
+        System.arraycopy(array, position, result, position + 1, array.length - position);
+        return result;
+    }
+
+    // возвращает тот же массив, если значения нет
+    static int[] remove(int[] array, int value) {
+        int position = Arrays.binarySearch(array, value);
+        if (position < 0) {
+            return array;
+        }
+
+        int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, position);
+        System.arraycopy(array, position + 1, result, position, array.length - position - 1);
+        return result;
+    }
+
+    static int[] toSortedArray(Collection<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    // пересечение слиянием, а при сильно различающихся длинах - поиском элементов короткого массива
+    // в длинном с экспоненциальным шагом. Если result не null, общие элементы записываются в него
+    private static int intersect(int[] first, int[] second, int[] result) {
+        int[] small = first.length <= second.length ? first : second;
+        int[] large = small == first ? second : first;
+        int size = 0;
+
+        if ((long) small.length * GALLOP_RATIO < large.length) {
+            int from = 0;
+            for (int value : small) {
+                int step = 1;
+                int to = from;
+                while (to < large.length && large[to] < value) {
+                    from = to + 1;
+                    to += step;
+                    step <<= 1;
+                }
+                int position = Arrays.binarySearch(large, from, Math.min(to + 1, large.length), value);
+                if (position >= 0) {
+                    if (result != null) {
+                        result[size] = value;
+                    }
+                    ++size;
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+                if (from >= large.length) {
+                    break;
+                }
+            }
+            return size;
+        }
+
+        int i = 0;
+        int j = 0;
+        while (i < small.length && j < large.length) {
+            if (small[i] < large[j]) {
+                ++i;
+            } else if (small[i] > large[j]) {
+                ++j;
+            } else {
+                if (result != null) {
+                    result[size] = small[i];
+                }
+                ++size;
+                ++i;
+                ++j;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.util.Map;
+
+public interface MetricsSource {
+    String getMetricsName();
+
+    Map<String, Object> getMetrics();
+}
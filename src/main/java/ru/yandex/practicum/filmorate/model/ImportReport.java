@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ImportReport {
+    private int imported;
+    private int failed;
+    // ошибки первых не добавленных записей, остальные учитываются только в failed
+    private List<RecordError> errors = new ArrayList<>();
+
+    @Data
+    @AllArgsConstructor
+    public static class RecordError {
+        private int line;
+        private String message;
+    }
+}
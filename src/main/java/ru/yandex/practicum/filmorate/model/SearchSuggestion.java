@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.enumerations.SuggestionType;
+
+@Data
+@Builder
+public class SearchSuggestion {
+    private SuggestionType type;
+    private int id;
+    private String name;
+    private int likes;
+}
@@ -1,4 +1,27 @@
 package ru.yandex.practicum.filmorate.model.enumerations;
+
+import ru.yandex.practicum.filmorate.exception.exceptions.NoSuchEnumException;
+
+// id совпадают с записями таблицы event_types из data.sql
 public enum EventType {
-    LIKE, REVIEW, FRIEND
+    LIKE(1), REVIEW(2), FRIEND(3);
+
+    private final int id;
+
+    EventType(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public static EventType fromId(int id) {
+        for (EventType eventType : values()) {
+            if (eventType.id == id) {
+                return eventType;
+            }
+        }
+        throw new NoSuchEnumException("Типа события с id = " + id + " не существует");
+    }
 }
@@ -1,5 +1,27 @@
 package ru.yandex.practicum.filmorate.model.enumerations;
 
+import ru.yandex.practicum.filmorate.exception.exceptions.NoSuchEnumException;
+
+// id совпадают с записями таблицы operations из data.sql
 public enum Operation {
-    REMOVE, ADD, UPDATE
+    REMOVE(1), ADD(2), UPDATE(3);
+
+    private final int id;
+
+    Operation(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public static Operation fromId(int id) {
+        for (Operation operation : values()) {
+            if (operation.id == id) {
+                return operation;
+            }
+        }
+        throw new NoSuchEnumException("Операции с id = " + id + " не существует");
+    }
 }
@@ -0,0 +1,5 @@
+package ru.yandex.practicum.filmorate.model.enumerations;
+
+public enum SuggestionType {
+    FILM, DIRECTOR
+}
@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Импорт NDJSON-файлов при запуске приложения:
+ * java -jar filmorate.jar --filmorate.import.users=users.ndjson --filmorate.import.films=films.ndjson
+ * Пользователи добавляются раньше фильмов, чтобы лайки фильмов могли на них ссылаться.
+ */
+@Component
+@Slf4j
+public class BulkImportRunner implements ApplicationRunner {
+    private final BulkImportService bulkImportService;
+    private final String usersFile;
+    private final String filmsFile;
+
+    @Autowired
+    public BulkImportRunner(BulkImportService bulkImportService,
+                            @Value("${filmorate.import.users:}") String usersFile,
+                            @Value("${filmorate.import.films:}") String filmsFile) {
+        this.bulkImportService = bulkImportService;
+        this.usersFile = usersFile;
+        this.filmsFile = filmsFile;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!usersFile.isBlank()) {
+            try (InputStream inputStream = Files.newInputStream(Path.of(usersFile))) {
+                logReport(usersFile, bulkImportService.importUsers(inputStream));
+            }
+        }
+        if (!filmsFile.isBlank()) {
+            try (InputStream inputStream = Files.newInputStream(Path.of(filmsFile))) {
+                logReport(filmsFile, bulkImportService.importFilms(inputStream));
+            }
+        }
+    }
+
+    private void logReport(String file, ImportReport report) {
+        log.info("Импорт из {}: добавлено {}, отклонено {}", file, report.getImported(), report.getFailed());
+        for (ImportReport.RecordError error : report.getErrors()) {
+            log.warn("{}, строка {}: {}", file, error.getLine(), error.getMessage());
+        }
+    }
+}
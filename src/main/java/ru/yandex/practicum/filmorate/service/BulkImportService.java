@@ -0,0 +1,203 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Массовое добавление фильмов и пользователей из NDJSON, по одному объекту на строку.
+ * Записи проверяются теми же ограничениями, что и при POST, а ссылки на жанры, режиссёров
+ * и пользователей - по кэширующим хранилищам, поэтому проверка обходится без запросов к базе.
+ * Проверенные записи добавляются пакетами по chunk-size, каждая порция в своей транзакции.
+ * Если порция не добавилась, например из-за повторяющегося email, её записи добавляются по одной,
+ * и в отчёт попадают ошибки только тех записей, которые добавить нельзя.
+ * Указанные в записях id не используются, id назначает база.
+ */
+@Service
+@Slf4j
+public class BulkImportService {
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final GenreStorage genreStorage;
+    private final DirectorStorage directorStorage;
+    private final UserStorage userStorage;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int chunkSize;
+
+    @Autowired
+    public BulkImportService(FilmService filmService,
+                             UserService userService,
+                             GenreStorage genreStorage,
+                             DirectorStorage directorStorage,
+                             UserStorage userStorage,
+                             ObjectMapper objectMapper,
+                             Validator validator,
+                             @Value("${filmorate.import.chunk-size:1000}") int chunkSize) {
+        this.filmService = filmService;
+        this.userService = userService;
+        this.genreStorage = genreStorage;
+        this.directorStorage = directorStorage;
+        this.userStorage = userStorage;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportReport importFilms(InputStream inputStream) throws IOException {
+        return importRecords(inputStream, Film.class, this::prepareFilm, filmService::addFilms, filmService::addFilm);
+    }
+
+    public ImportReport importUsers(InputStream inputStream) throws IOException {
+        return importRecords(inputStream, User.class, user -> user.setId(0), userService::addUsers,
+                userService::addUser);
+    }
+
+    private <T> ImportReport importRecords(InputStream inputStream,
+                                           Class<T> type,
+                                           Consumer<T> prepare,
+                                           Consumer<List<T>> addChunk,
+                                           Consumer<T> addOne) throws IOException {
+        ImportReport report = new ImportReport();
+        List<T> chunk = new ArrayList<>();
+        List<Integer> chunkLines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            ++lineNumber;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            try {
+                T record = objectMapper.readValue(line, type);
+                checkConstraints(record);
+                prepare.accept(record);
+                chunk.add(record);
+                chunkLines.add(lineNumber);
+            } catch (JsonProcessingException e) {
+                addError(report, lineNumber, "Запись составлена неправильно: " + e.getOriginalMessage());
+            } catch (RuntimeException e) {
+                addError(report, lineNumber, e.getMessage());
+            }
+
+            if (chunk.size() == chunkSize) {
+                flush(report, chunk, chunkLines, prepare, addChunk, addOne);
+            }
+        }
+        flush(report, chunk, chunkLines, prepare, addChunk, addOne);
+        // ошибки добавления записей порции появляются позже ошибок разбора следующих строк
+        report.getErrors().sort(Comparator.comparingInt(ImportReport.RecordError::getLine));
+
+        log.info("Импорт {}: добавлено {}, отклонено {}", type.getSimpleName(), report.getImported(),
+                report.getFailed());
+        return report;
+    }
+
+    private <T> void flush(ImportReport report,
+                           List<T> chunk,
+                           List<Integer> chunkLines,
+                           Consumer<T> prepare,
+                           Consumer<List<T>> addChunk,
+                           Consumer<T> addOne) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            addChunk.accept(chunk);
+            report.setImported(report.getImported() + chunk.size());
+        } catch (RuntimeException e) {
+            log.warn("Порция из {} записей не добавлена, записи добавляются по одной: {}", chunk.size(),
+                    e.getMessage());
+            for (int i = 0; i < chunk.size(); ++i) {
+                try {
+                    // id, назначенные в отменённой транзакции, сбрасываются
+                    prepare.accept(chunk.get(i));
+                    addOne.accept(chunk.get(i));
+                    report.setImported(report.getImported() + 1);
+                } catch (RuntimeException recordException) {
+                    addError(report, chunkLines.get(i), recordException.getMessage());
+                }
+            }
+        }
+
+        chunk.clear();
+        chunkLines.clear();
+    }
+
+    private <T> void checkConstraints(T record) {
+        Set<ConstraintViolation<T>> violations = validator.validate(record);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException("Ошибка при валидации объекта " + violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    // жанры и режиссёры заменяются объектами из кэша, несуществующие режиссёры и пользователи дают ошибку записи
+    private void prepareFilm(Film film) {
+        film.setId(0);
+
+        Set<Genre> genres = new LinkedHashSet<>();
+        if (film.getGenres() != null) {
+            film.getGenres().stream()
+                    .map(Genre::getId)
+                    .distinct()
+                    .sorted()
+                    .forEach(genreId -> genres.add(genreStorage.getGenre(genreId)));
+        }
+        film.setGenres(genres);
+
+        Set<Director> directors = new LinkedHashSet<>();
+        if (film.getDirectors() != null) {
+            film.getDirectors().stream()
+                    .map(Director::getId)
+                    .distinct()
+                    .sorted()
+                    .forEach(directorId -> directors.add(directorStorage.getDirector(directorId)));
+        }
+        film.setDirectors(directors);
+
+        if (film.getUserLikes() == null) {
+            film.setUserLikes(new HashSet<>());
+        }
+        for (int userId : film.getUserLikes()) {
+            userStorage.checkExistsUser(userId);
+        }
+    }
+
+    private void addError(ImportReport report, int line, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            report.getErrors().add(new ImportReport.RecordError(line, message));
+        }
+    }
+}
@@ -2,6 +2,8 @@ package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.index.FilmCache;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.DBFilmDirectorStorage;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
@@ -13,11 +15,18 @@ public class DirectorService {
 
     private final DirectorStorage directorStorage;
     private final DBFilmDirectorStorage filmDirectorStorage;
+    private final FilmSearchIndex filmSearchIndex;
+    private final FilmCache filmCache;
 
     @Autowired
-    public DirectorService(DirectorStorage directorStorage, DBFilmDirectorStorage filmDirectorStorage) {
+    public DirectorService(DirectorStorage directorStorage,
+                           DBFilmDirectorStorage filmDirectorStorage,
+                           FilmSearchIndex filmSearchIndex,
+                           FilmCache filmCache) {
         this.directorStorage = directorStorage;
         this.filmDirectorStorage = filmDirectorStorage;
+        this.filmSearchIndex = filmSearchIndex;
+        this.filmCache = filmCache;
     }
 
     public List<Director> getAllDirectors() {
@@ -33,10 +42,16 @@ public class DirectorService {
     }
 
     public Director updateDirector(Director director) {
-        return directorStorage.updateDirector(director);
+        directorStorage.updateDirector(director);
+        filmSearchIndex.updateDirector(director);
+        filmCache.invalidateDirector(director.getId());
+        return director;
     }
 
     public Director deleteDirector(int directorId) {
-        return directorStorage.deleteDirector(directorId);
+        Director director = directorStorage.deleteDirector(directorId);
+        filmSearchIndex.removeDirector(directorId);
+        filmCache.invalidateDirector(directorId);
+        return director;
     }
 }
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.service;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.enumerations.EventType;
@@ -10,21 +11,44 @@ import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
 import java.util.List;
 
 @Service
-@RequiredArgsConstructor
 public class EventService {
 
     private final EventStorage eventStorage;
+    private final EventWriter eventWriter;
+    private final FriendsTimelines friendsTimelines;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
-    public List<Event> getAllByUserId(int userId) {
-        return eventStorage.getAllByUserId(userId);
+    @Autowired
+    public EventService(EventStorage eventStorage,
+                        EventWriter eventWriter,
+                        FriendsTimelines friendsTimelines,
+                        @Value("${filmorate.feed.default-page-size:100}") int defaultPageSize,
+                        @Value("${filmorate.feed.max-page-size:1000}") int maxPageSize) {
+        this.eventStorage = eventStorage;
+        this.eventWriter = eventWriter;
+        this.friendsTimelines = friendsTimelines;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    // страница ленты после события afterEventId, следующая страница запрашивается с eventId последнего события
+    public List<Event> getByUserId(int userId, int afterEventId, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+        eventWriter.flush();
+        return eventStorage.getByUserId(userId, afterEventId, pageSize);
+    }
+
+    public List<Event> getFriendsFeed(int userId, Integer limit) {
+        return friendsTimelines.getTimeline(userId, limit == null ? defaultPageSize : Math.min(limit, maxPageSize));
     }
 
     public void crete(int userId, int entityId, EventType eventType, Operation operation) {
-        eventStorage.create(Event.builder()
+        friendsTimelines.append(eventWriter.write(Event.builder()
                 .userId(userId)
                 .entityId(entityId)
                 .eventType(eventType)
                 .operation(operation)
-                .build());
+                .build()));
     }
-}
\ No newline at end of file
+}
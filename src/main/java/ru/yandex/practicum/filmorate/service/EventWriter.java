@@ -0,0 +1,214 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенная запись событий ленты пакетами.
+ * События складываются в ограниченную очередь и записываются фоновым потоком раз в flush-interval-ms
+ * или сразу, как только в очереди набирается целый пакет. Если очередь заполнена, записывающий поток
+ * сам сбрасывает её в базу, поэтому запросы замедляются, но события не теряются.
+ * Id событиям присваиваются при добавлении в очередь из последовательности feed_event_id_seq,
+ * которую база использует и для вставок без явного id. Id выделяются блоками по batch-size,
+ * поэтому событие можно показать в лентах друзей ещё до записи.
+ * Id, выделенные, но не присвоенные до остановки, пропускаются.
+ * Перед чтением ленты очередь сбрасывается через {@link #flush()}, при остановке приложения
+ * дописывается всё, что осталось в очереди. События пользователей, удалённых до записи, пропускаются.
+ * Если записать пакет не удалось, он сохраняется и записывается первым при следующем сбросе,
+ * а более новые события ждут в очереди. Пакет пишется в одной транзакции, а уже записанные события
+ * при повторе пропускаются, поэтому повтор не задваивает события.
+ */
+@Component
+@Slf4j
+public class EventWriter implements MetricsSource {
+    private final EventStorage eventStorage;
+    private final int batchSize;
+    private final BlockingQueue<Event> queue;
+    private final ScheduledExecutorService flushExecutor;
+    // выделенные id и индекс следующего, изменяются под enqueueLock
+    private int[] eventIds = new int[0];
+    private int nextEventIdIndex;
+    // id присваивается и событие попадает в очередь под одной блокировкой, поэтому очередь упорядочена по id
+    private final ReentrantLock enqueueLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // незаписанный пакет, изменяется под flushLock
+    private final List<Event> retry = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong backpressureFlushes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicInteger retryPending = new AtomicInteger();
+
+    @Autowired
+    public EventWriter(EventStorage eventStorage,
+                       @Value("${filmorate.feed.writer.queue-capacity:10000}") int queueCapacity,
+                       @Value("${filmorate.feed.writer.batch-size:500}") int batchSize,
+                       @Value("${filmorate.feed.writer.flush-interval-ms:50}") long flushIntervalMillis) {
+        this.eventStorage = eventStorage;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // присваивает событию id и время и ставит его в очередь на запись
+    public Event write(Event event) {
+        enqueueLock.lock();
+        try {
+            if (nextEventIdIndex == eventIds.length) {
+                eventIds = eventStorage.nextEventIds(batchSize);
+                nextEventIdIndex = 0;
+            }
+            event.setEventId(eventIds[nextEventIdIndex++]);
+            if (event.getTimestamp() == 0) {
+                event.setTimestamp(System.currentTimeMillis());
+            }
+
+            while (!queue.offer(event)) {
+                backpressureFlushes.incrementAndGet();
+                if (!flush()) {
+                    throw new DataAccessResourceFailureException("Очередь событий заполнена, "
+                            + "а записать события в базу не удалось");
+                }
+            }
+        } finally {
+            enqueueLock.unlock();
+        }
+
+        if (closed) {
+            flush();
+        } else if (queue.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    flushScheduled.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+        return event;
+    }
+
+    // записывает в базу все события, попавшие в очередь до вызова, false - часть событий записать не удалось
+    public boolean flush() {
+        // события, добавленные во время сброса, достанутся следующему сбросу.
+        // Размер берётся под enqueueLock, чтобы не пропустить событие, которому id уже присвоен,
+        // и до flushLock, чтобы блокировки всегда брались в одном порядке
+        int remaining;
+        enqueueLock.lock();
+        try {
+            remaining = queue.size();
+        } finally {
+            enqueueLock.unlock();
+        }
+
+        flushLock.lock();
+        try {
+            if (!retry.isEmpty()) {
+                if (!writeBatch(retry)) {
+                    return false;
+                }
+                retry.clear();
+                retryPending.set(0);
+            }
+
+            List<Event> batch = new ArrayList<>(Math.min(batchSize, remaining));
+            while (remaining > 0 && queue.drainTo(batch, Math.min(batchSize, remaining)) > 0) {
+                remaining -= batch.size();
+                if (!writeBatch(batch)) {
+                    retry.addAll(batch);
+                    retryPending.set(retry.size());
+                    return false;
+                }
+                batch.clear();
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        closed = true;
+        flushExecutor.shutdown();
+        if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Фоновая запись событий не завершилась за 5 секунд");
+        }
+        flush();
+        log.info("Запись событий остановлена, записано событий: {}, пропущено: {}, осталось незаписанными: {}",
+                written.get(), dropped.get(), queue.size() + retryPending.get());
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "eventWriter";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", queue.size());
+        metrics.put("queueCapacity", queue.size() + queue.remainingCapacity());
+        metrics.put("written", written.get());
+        metrics.put("batches", batches.get());
+        metrics.put("avgBatchSize", batches.get() == 0 ? 0.0 : (double) written.get() / batches.get());
+        metrics.put("backpressureFlushes", backpressureFlushes.get());
+        metrics.put("dropped", dropped.get());
+        metrics.put("failedBatches", failedBatches.get());
+        metrics.put("retryPending", retryPending.get());
+        return metrics;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка при фоновой записи событий", e);
+        }
+    }
+
+    private boolean writeBatch(List<Event> batch) {
+        try {
+            int created = eventStorage.createAll(batch);
+            written.addAndGet(created);
+            dropped.addAndGet(batch.size() - created);
+            batches.incrementAndGet();
+            return true;
+        } catch (DataAccessException e) {
+            failedBatches.incrementAndGet();
+            log.error("Не удалось записать пакет из {} событий, он будет записан при следующем сбросе",
+                    batch.size(), e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Заполняет у фильмов жанры, режиссёров и лайки пакетными запросами.
+ * На каждую порцию из {@link #CHUNK_SIZE} фильмов выполняется ровно три запроса,
+ * независимо от того, сколько фильмов в порции. Жанры и режиссёры по id берутся из кэширующих хранилищ,
+ * поэтому запросы к связующим таблицам обходятся без соединения со справочниками.
+ * Лайки читаются через {@link LikeWriter}, чтобы учитывать ещё не записанные в базу.
+ */
+@Component
+public class FilmCollector {
+    static final int CHUNK_SIZE = 1000;
+
+    private final GenreStorage genreStorage;
+    private final DirectorStorage directorStorage;
+    private final LikeWriter likeWriter;
+
+    @Autowired
+    public FilmCollector(GenreStorage genreStorage,
+                         DirectorStorage directorStorage,
+                         LikeWriter likeWriter) {
+        this.genreStorage = genreStorage;
+        this.directorStorage = directorStorage;
+        this.likeWriter = likeWriter;
+    }
+
+    public Film collectFilm(Film film) {
+        collectFilms(List.of(film));
+        return film;
+    }
+
+    public List<Film> collectFilms(List<Film> films) {
+        for (int from = 0; from < films.size(); from += CHUNK_SIZE) {
+            collectChunk(films.subList(from, Math.min(from + CHUNK_SIZE, films.size())));
+        }
+        return films;
+    }
+
+    private void collectChunk(List<Film> films) {
+        Map<Integer, Set<Genre>> filmGenresMap = genreStorage.getGenreByFilm(films);
+        Map<Integer, Set<Integer>> filmLikesMap = likeWriter.getLikes(films);
+        Map<Integer, Set<Director>> filmDirectorsMap = directorStorage.getDirectorByFilm(films);
+
+        for (Film film : films) {
+            film.setGenres(filmGenresMap.get(film.getId()).stream()
+                    .sorted(Comparator.comparingInt(Genre::getId))
+                    .collect(Collectors.toCollection(LinkedHashSet::new)));
+            film.setDirectors(filmDirectorsMap.get(film.getId()).stream()
+                    .sorted(Comparator.comparingInt(Director::getId))
+                    .collect(Collectors.toCollection(LinkedHashSet::new)));
+            film.setUserLikes(filmLikesMap.get(film.getId()));
+        }
+    }
+}
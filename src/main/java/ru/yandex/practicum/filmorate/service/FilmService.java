@@ -1,11 +1,18 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
-import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.index.FilmCache;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.index.RecommendationCache;
+import ru.yandex.practicum.filmorate.index.RecommendationEngine;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
+import ru.yandex.practicum.filmorate.model.SearchSuggestion;
 import ru.yandex.practicum.filmorate.model.enumerations.EventType;
 import ru.yandex.practicum.filmorate.model.enumerations.Operation;
 import ru.yandex.practicum.filmorate.model.enumerations.SortType;
@@ -17,6 +24,7 @@ import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,6 +36,16 @@ public class FilmService {
     private final DBLikesStorage likesStorage;
     private final UserStorage userStorage;
     private final EventService eventService;
+    private final PopularityLeaderboard popularityLeaderboard;
+    private final FilmCollector filmCollector;
+    private final FilmSearchIndex filmSearchIndex;
+    private final RecommendationEngine recommendationEngine;
+    private final RecommendationCache recommendationCache;
+    private final FilmCache filmCache;
+    private final LikeWriter likeWriter;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int maxSuggestions;
 
     @Autowired
     public FilmService(FilmStorage filmStorage,
@@ -36,7 +54,17 @@ public class FilmService {
                        DBFilmDirectorStorage filmDirectorStorage,
                        DBLikesStorage likesStorage,
                        UserStorage userStorage,
-                       EventService eventService) {
+                       EventService eventService,
+                       PopularityLeaderboard popularityLeaderboard,
+                       FilmCollector filmCollector,
+                       FilmSearchIndex filmSearchIndex,
+                       RecommendationEngine recommendationEngine,
+                       RecommendationCache recommendationCache,
+                       FilmCache filmCache,
+                       LikeWriter likeWriter,
+                       @Value("${filmorate.list.default-page-size:100}") int defaultPageSize,
+                       @Value("${filmorate.list.max-page-size:1000}") int maxPageSize,
+                       @Value("${filmorate.search.suggestions.max-count:100}") int maxSuggestions) {
         this.filmStorage = filmStorage;
         this.directorStorage = directorStorage;
         this.filmGenreStorage = filmGenreStorage;
@@ -44,78 +72,53 @@ public class FilmService {
         this.likesStorage = likesStorage;
         this.userStorage = userStorage;
         this.eventService = eventService;
+        this.popularityLeaderboard = popularityLeaderboard;
+        this.filmCollector = filmCollector;
+        this.filmSearchIndex = filmSearchIndex;
+        this.recommendationEngine = recommendationEngine;
+        this.recommendationCache = recommendationCache;
+        this.filmCache = filmCache;
+        this.likeWriter = likeWriter;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxSuggestions = maxSuggestions;
     }
 
     public List<Film> getAllFilms() {
-        List<Film> films = new ArrayList<>(filmStorage.getAllFilms().values());
-
-        Map<Integer, Set<Genre>> filmGenresMap = filmGenreStorage.getFilmGenre(films);
-        Map<Integer, Set<Integer>> filmLikesMap = likesStorage.getLikes(films);
-        Map<Integer, Set<Director>> filmDirectorsMap = directorStorage.getDirectorByFilm(films);
-
-        return films.stream()
-                .peek(film -> {
-                    film.setGenres(filmGenresMap.get(film.getId()).stream()
-                            .sorted(Comparator.comparingInt(Genre::getId))
-                            .collect(Collectors.toCollection(LinkedHashSet::new)));
-                    film.setUserLikes(filmLikesMap.get(film.getId()));
-                    film.setDirectors(filmDirectorsMap.get(film.getId()));
-                })
-                .collect(Collectors.toList());
+        return filmCollector.collectFilms(new ArrayList<>(filmStorage.getAllFilms().values()));
     }
 
-    public Film getFilm(int filmId) {
-        return collectFilm(filmId);
+    // страница фильмов после фильма afterId, следующая страница запрашивается с id последнего фильма
+    public List<Film> getFilmsPage(int afterId, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+        return filmCollector.collectFilms(filmStorage.getFilmsPage(afterId, pageSize));
     }
 
-    public List<Film> getMostLikedFilms(int count) {
-        List<Film> films = getAllFilms();
-        List<Film> mostLikedFilms = new ArrayList<>(count);
-
-        if (count > films.size()) {
-            count = films.size();
-        }
-
-        for (int i = 0; i < count; ++i) {
-            mostLikedFilms.add(films.get(i));
-        }
-
-        mostLikedFilms.sort((o1, o2) -> o2.getUserLikes().size() - o1.getUserLikes().size());
-
-        for (int i = count; i < films.size(); ++i) {
-            if (mostLikedFilms.get(count - 1).getUserLikes().size() >= films.get(i).getUserLikes().size()) {
-                continue;
+    // фильмы собираются порциями по FilmCollector.CHUNK_SIZE, в памяти одновременно находится не больше одной порции
+    public void streamAllFilms(Consumer<Film> action) {
+        List<Film> window = new ArrayList<>();
+        filmStorage.forEachFilm(film -> {
+            window.add(film);
+            if (window.size() == FilmCollector.CHUNK_SIZE) {
+                flushWindow(window, action);
             }
+        });
+        flushWindow(window, action);
+    }
 
-            for (int j = 0; j < mostLikedFilms.size(); ++j) {
-                if (films.get(i).getUserLikes().size() > mostLikedFilms.get(j).getUserLikes().size()) {
-                    mostLikedFilms.remove(count - 1);
-                    mostLikedFilms.add(j, films.get(i));
-                    break;
-                }
-            }
-        }
+    public Film getFilm(int filmId) {
+        return collectFilm(filmId);
+    }
 
-        return mostLikedFilms;
+    public List<Film> getMostLikedFilms(int count) {
+        return filmCollector.collectFilms(getFilmsInOrder(popularityLeaderboard.getMostLiked(count, 0, 0)));
     }
 
     public List<Film> getDirectorFilms(int directorId, SortType sortBy) {
         directorStorage.checkContainsDirector(directorId);
-        List<Film> films = filmDirectorStorage.getDirectorFilms(directorId, sortBy);
-
-        Map<Integer, Set<Genre>> filmGenresMap = filmGenreStorage.getFilmGenre(films);
-        Map<Integer, Set<Integer>> filmLikesMap = likesStorage.getLikes(films);
-        Map<Integer, Set<Director>> filmDirectorsMap = directorStorage.getDirectorByFilm(films);
-
-        return films.stream()
-                .peek(film -> {
-                    film.setGenres(filmGenresMap.get(film.getId()).stream()
-                            .sorted(Comparator.comparingInt(Genre::getId))
-                            .collect(Collectors.toCollection(LinkedHashSet::new)));
-                    film.setDirectors(filmDirectorsMap.get(film.getId()));
-                    film.setUserLikes(filmLikesMap.get(film.getId()));
-                })
-                .collect(Collectors.toList());
+        // сортировка по лайкам выполняется в базе
+        likeWriter.flush();
+        return filmCollector.collectFilms(filmDirectorStorage.getDirectorFilms(directorId, sortBy));
     }
 
     public Film addFilm(Film film) {
@@ -127,11 +130,41 @@ public class FilmService {
 
         film.setGenres(filmGenreStorage.getFilmGenre(film.getId()));
         film.setDirectors(filmDirectorStorage.getFilmDirector(film.getId()));
+        popularityLeaderboard.putFilm(film);
+        filmSearchIndex.putFilm(film);
+        recommendationEngine.setFilmLikes(film.getId(), film.getUserLikes());
+        if (!film.getUserLikes().isEmpty()) {
+            recommendationCache.invalidateAll();
+        }
 
         return film;
     }
 
+    // добавляет порцию фильмов с проверенными жанрами, режиссёрами и лайками в одной транзакции
+    @Transactional
+    public List<Film> addFilms(List<Film> films) {
+        filmStorage.addFilms(films);
+        filmGenreStorage.addFilmGenres(films);
+        filmDirectorStorage.addFilmDirectors(films);
+        likesStorage.addFilmsLikes(films);
+
+        boolean liked = false;
+        for (Film film : films) {
+            popularityLeaderboard.putFilm(film);
+            filmSearchIndex.putFilm(film);
+            recommendationEngine.setFilmLikes(film.getId(), film.getUserLikes());
+            liked |= !film.getUserLikes().isEmpty();
+        }
+        if (liked) {
+            recommendationCache.invalidateAll();
+        }
+
+        return films;
+    }
+
     public Film updateFilm(Film film) {
+        // лайки фильма заменяются целиком, поэтому незаписанные изменения должны попасть в базу раньше
+        likeWriter.flush();
         Film oldFilmVersion = collectFilm(film.getId());
         filmStorage.updateFilm(film);
 
@@ -146,110 +179,128 @@ public class FilmService {
 
         film.setGenres(filmGenreStorage.getFilmGenre(film.getId()));
         film.setDirectors(filmDirectorStorage.getFilmDirector(film.getId()));
+        filmCache.invalidate(film.getId());
+        popularityLeaderboard.putFilm(film);
+        filmSearchIndex.putFilm(film);
+        recommendationEngine.setFilmLikes(film.getId(), film.getUserLikes());
+        recommendationCache.invalidateAll();
 
         return film;
     }
 
     public Film addLikeToFilm(int filmId, int userId) {
-        // проверка на существование пользователя
-        userStorage.getUser(userId);
-
-        Film film = collectFilm(filmId);
+        addLike(filmId, userId);
+        return collectFilm(filmId);
+    }
 
-        if (!film.getUserLikes().contains(userId)) {
-            likesStorage.addLike(userId, filmId);
+    // лайк без сборки фильма, в ответе только новое количество лайков
+    public FilmLikes addLike(int filmId, int userId) {
+        // проверка на существование пользователя
+        userStorage.checkExistsUser(userId);
+
+        if (likeWriter.addLike(userId, filmId)) {
+            filmCache.addLike(filmId, userId);
+            popularityLeaderboard.addLike(filmId);
+            filmSearchIndex.addLike(filmId);
+            recommendationEngine.addLike(userId, filmId);
+            recommendationCache.invalidateLike(userId, filmId);
         }
-        film.getUserLikes().add(userId);
 
         eventService.crete(userId, filmId, EventType.LIKE, Operation.ADD);
 
-        return film;
+        return FilmLikes.builder().filmId(filmId).likes(popularityLeaderboard.getLikes(filmId)).build();
     }
 
     public Film deleteFilm(int filmId) {
-        Film film = filmStorage.deleteFilm(filmId);
-        film.setGenres(filmGenreStorage.getFilmGenre(filmId));
-        film.setDirectors(filmDirectorStorage.getFilmDirector(filmId));
-        film.setUserLikes(likesStorage.getLikes(filmId));
+        // фильм собирается до удаления, жанры, режиссёры и лайки удаляются вместе с ним каскадно
+        Film film = collectFilm(filmId);
+        likeWriter.flush();
+        filmStorage.deleteFilm(filmId);
 
-        filmGenreStorage.deleteFilmGenres(filmId);
-        filmDirectorStorage.deleteFilmDirectors(filmId);
-        likesStorage.deleteFilmLikes(filmId);
+        filmCache.invalidate(filmId);
+        popularityLeaderboard.removeFilm(filmId);
+        filmSearchIndex.removeFilm(filmId);
+        recommendationEngine.removeFilm(filmId);
+        recommendationCache.invalidateAll();
 
         return film;
     }
 
     public Film deleteLikeToFilm(int filmId, int userId) {
-        // проверка на существование пользователя
-        userStorage.getUser(userId);
+        deleteLike(filmId, userId);
+        return collectFilm(filmId);
+    }
 
-        Film film = collectFilm(filmId);
+    public FilmLikes deleteLike(int filmId, int userId) {
+        // проверка на существование пользователя
+        userStorage.checkExistsUser(userId);
 
-        if (!film.getUserLikes().contains(userId)) {
+        if (!likeWriter.removeLike(userId, filmId)) {
             throw new UpdateNonExistObjectException("Невозможно удалить несуществующий "
                     + "лайк пользователя с id = " + userId + " для фильма с id = " + filmId);
         }
 
-        likesStorage.deleteLike(userId, filmId);
-        film.getUserLikes().remove(userId);
+        filmCache.removeLike(filmId, userId);
+        popularityLeaderboard.removeLike(filmId);
+        filmSearchIndex.removeLike(filmId);
+        recommendationEngine.removeLike(userId, filmId);
+        recommendationCache.invalidateLike(userId, filmId);
 
         eventService.crete(userId, filmId, EventType.LIKE, Operation.REMOVE);
 
-        return film;
+        return FilmLikes.builder().filmId(filmId).likes(popularityLeaderboard.getLikes(filmId)).build();
     }
 
     public List<Film> getMostLikedFilmsByGenreAndYear(int count, int genreID, int year) {
-        List<Film> filmList = filmStorage.getMostLikedFilmsByGenreAndYear(count, genreID, year);
+        return filmCollector.collectFilms(getFilmsInOrder(popularityLeaderboard.getMostLiked(count, genreID, year)));
+    }
+
+    private List<Film> getFilmsInOrder(List<Integer> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        Map<Integer, Set<Genre>> filmGenresMap = filmGenreStorage.getFilmGenre(filmList);
-        Map<Integer, Set<Integer>> filmLikesMap = likesStorage.getLikes(filmList);
-        Map<Integer, Set<Director>> filmDirectorsMap = directorStorage.getDirectorByFilm(filmList);
+        Map<Integer, Film> films = filmStorage.getFilm(filmIds).stream()
+                .collect(Collectors.toMap(Film::getId, film -> film));
 
-        return filmList.stream().peek(film -> {
-            film.setGenres(filmGenresMap.get(film.getId()).stream()
-                    .sorted(Comparator.comparingInt(Genre::getId))
-                    .collect(Collectors.toCollection(LinkedHashSet::new)));
-            film.setUserLikes(filmLikesMap.get(film.getId()));
-            film.setDirectors(filmDirectorsMap.get(film.getId()));
-        }).collect(Collectors.toList());
+        return filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private void flushWindow(List<Film> window, Consumer<Film> action) {
+        filmCollector.collectFilms(window).forEach(action);
+        window.clear();
     }
 
     private Film collectFilm(int filmId) {
-        Film film = filmStorage.getFilm(filmId);
-        film.setGenres(filmGenreStorage.getFilmGenre(filmId));
-        film.setDirectors(filmDirectorStorage.getFilmDirector(filmId));
-        film.setUserLikes(likesStorage.getLikes(filmId));
+        Film film = filmCache.get(filmId);
+        if (film != null) {
+            return film;
+        }
+
+        long stamp = filmCache.stamp(filmId);
+        film = filmCollector.collectFilm(filmStorage.getFilm(filmId));
+        filmCache.put(film, stamp);
         return film;
     }
 
     public List<Film> getCommonFriendFilms(int userId, int friendId) {
-        userStorage.getUser(userId);
-        userStorage.getUser(friendId);
-
-        List<Film> films = filmStorage.getCommonFriendFilms(userId, friendId);
-
-        if (films.isEmpty()) {
-            return new ArrayList<>();
-        }
+        userStorage.checkExistsUser(userId);
+        userStorage.checkExistsUser(friendId);
 
-        Map<Integer, Set<Genre>> filmGenresMap = filmGenreStorage.getFilmGenre(films);
-        Map<Integer, Set<Integer>> filmLikesMap = likesStorage.getLikes(films);
-
-        return films.stream()
-                .peek(film -> {
-                    film.setGenres(filmGenresMap.get(film.getId()));
-                    film.setUserLikes(filmLikesMap.get(film.getId()));
-                })
-                .sorted((f1, f2) -> f2.getUserLikes().size() - f1.getUserLikes().size())
-                .collect(Collectors.toList());
+        likeWriter.flush();
+        return filmCollector.collectFilms(filmStorage.getCommonFriendFilms(userId, friendId));
     }
 
     public List<Film> searchFilms(String query, String by) {
         boolean isDirector = by.contains("director");
         boolean isTitle = by.contains("title");
-        return filmStorage.searchFilm(query, isDirector, isTitle).stream()
-                .peek(film -> film.setGenres(filmGenreStorage.getFilmGenre(film.getId())))
-                .peek(film -> film.setDirectors(filmDirectorStorage.getFilmDirector(film.getId())))
-                .collect(Collectors.toList());
+        return filmCollector.collectFilms(getFilmsInOrder(filmSearchIndex.search(query, isDirector, isTitle)));
+    }
+
+    public List<SearchSuggestion> getSearchSuggestions(String query, int count) {
+        return filmSearchIndex.suggest(query, Math.min(count, maxSuggestions));
     }
 }
\ No newline at end of file
@@ -0,0 +1,247 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.index.FriendshipGraph;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ленты событий друзей пользователей.
+ * Новое событие сразу дописывается в ленты всех, кто добавил автора в друзья (fan-out on write),
+ * поэтому чтение ленты не обращается к базе. Ленты ограничены capacity последними событиями и
+ * создаются при первом чтении, всего в памяти хранится не больше max-timelines лент,
+ * давно не читавшиеся вытесняются.
+ * События авторов, у которых больше fanout-threshold подписчиков, в ленты не дописываются,
+ * а подгружаются из базы при чтении (fan-out on read), чтобы одно событие не обходило огромное число лент.
+ * Друзья и подписчики берутся из {@link FriendshipGraph}, изменения дружбы передаются сюда после обновления графа.
+ */
+@Component
+public class FriendsTimelines implements MetricsSource {
+    private final EventStorage eventStorage;
+    private final EventWriter eventWriter;
+    private final FriendshipGraph friendshipGraph;
+    private final int capacity;
+    private final int fanoutThreshold;
+    private final int maxTimelines;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // порядок вставки обновляется при чтении ленты, первой вытесняется дольше всех не читавшаяся
+    private final LinkedHashMap<Integer, Timeline> timelines = new LinkedHashMap<>();
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong hubReads = new AtomicLong();
+    private final AtomicLong fanoutEvents = new AtomicLong();
+    private final AtomicLong fanoutWrites = new AtomicLong();
+    private final AtomicLong hubEvents = new AtomicLong();
+
+    @Autowired
+    public FriendsTimelines(EventStorage eventStorage,
+                            EventWriter eventWriter,
+                            FriendshipGraph friendshipGraph,
+                            @Value("${filmorate.feed.timeline.capacity:200}") int capacity,
+                            @Value("${filmorate.feed.timeline.fanout-threshold:1000}") int fanoutThreshold,
+                            @Value("${filmorate.feed.timeline.max-timelines:100000}") int maxTimelines) {
+        this.eventStorage = eventStorage;
+        this.eventWriter = eventWriter;
+        this.friendshipGraph = friendshipGraph;
+        this.capacity = capacity;
+        this.fanoutThreshold = fanoutThreshold;
+        this.maxTimelines = maxTimelines;
+    }
+
+    // последние limit событий друзей пользователя по возрастанию eventId, limit не больше capacity
+    public List<Event> getTimeline(int userId, int limit) {
+        int size = Math.min(limit, capacity);
+        Set<Integer> pushed = new HashSet<>();
+        Set<Integer> hubs = new HashSet<>();
+        Timeline timeline;
+        boolean build;
+
+        lock.lock();
+        try {
+            for (int friendId : friendshipGraph.getFriends(userId)) {
+                (isHub(friendId) ? hubs : pushed).add(friendId);
+            }
+            timeline = timelines.remove(userId);
+            if (timeline == null) {
+                timeline = new Timeline();
+            }
+            // лента появляется в памяти до загрузки, чтобы события, созданные во время загрузки, в неё попали
+            timelines.put(userId, timeline);
+            evictOldest();
+            build = !timeline.loaded;
+        } finally {
+            lock.unlock();
+        }
+
+        reads.incrementAndGet();
+        eventWriter.flush();
+
+        List<Event> loaded = List.of();
+        if (build) {
+            builds.incrementAndGet();
+            loaded = eventStorage.getLastByUserIds(pushed, capacity);
+        }
+        List<Event> pulled = List.of();
+        if (!hubs.isEmpty()) {
+            hubReads.incrementAndGet();
+            pulled = eventStorage.getLastByUserIds(hubs, size);
+        }
+
+        lock.lock();
+        try {
+            if (build) {
+                timeline.addAll(loaded);
+                timeline.loaded = true;
+            }
+
+            NavigableMap<Integer, Event> result = new TreeMap<>();
+            for (Event event : timeline.events.descendingMap().values()) {
+                if (result.size() == size) {
+                    break;
+                }
+                result.put(event.getEventId(), event);
+            }
+            for (Event event : pulled) {
+                result.put(event.getEventId(), event);
+            }
+            while (result.size() > size) {
+                result.pollFirstEntry();
+            }
+            return new ArrayList<>(result.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void append(Event event) {
+        lock.lock();
+        try {
+            int[] authorFollowers = friendshipGraph.getFollowers(event.getUserId());
+            if (authorFollowers.length == 0) {
+                return;
+            }
+            if (authorFollowers.length > fanoutThreshold) {
+                hubEvents.incrementAndGet();
+                return;
+            }
+
+            fanoutEvents.incrementAndGet();
+            for (int followerId : authorFollowers) {
+                Timeline timeline = timelines.get(followerId);
+                if (timeline != null) {
+                    timeline.add(event);
+                    fanoutWrites.incrementAndGet();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void addFriend(int userId) {
+        lock.lock();
+        try {
+            timelines.remove(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void deleteFriend(int userId, int friendId) {
+        lock.lock();
+        try {
+            timelines.remove(userId);
+            // бывший хаб: его прошлые события не дописывались в ленты, поэтому ленты подписчиков собираются заново
+            if (friendshipGraph.getFollowersCount(friendId) == fanoutThreshold) {
+                dropTimelines(friendshipGraph.getFollowers(friendId));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // вызывается до удаления пользователя из графа, чтобы сбросить ленты его подписчиков
+    public void removeUser(int userId) {
+        lock.lock();
+        try {
+            dropTimelines(friendshipGraph.getFollowers(userId));
+            timelines.remove(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "friendsTimelines";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            long entries = 0;
+            for (Timeline timeline : timelines.values()) {
+                entries += timeline.events.size();
+            }
+            metrics.put("timelines", timelines.size());
+            metrics.put("entries", entries);
+        } finally {
+            lock.unlock();
+        }
+        metrics.put("reads", reads.get());
+        metrics.put("builds", builds.get());
+        metrics.put("hubReads", hubReads.get());
+        metrics.put("fanoutEvents", fanoutEvents.get());
+        metrics.put("fanoutWrites", fanoutWrites.get());
+        metrics.put("hubEvents", hubEvents.get());
+        return metrics;
+    }
+
+    private boolean isHub(int userId) {
+        return friendshipGraph.getFollowersCount(userId) > fanoutThreshold;
+    }
+
+    private void dropTimelines(int[] userIds) {
+        for (int userId : userIds) {
+            timelines.remove(userId);
+        }
+    }
+
+    private void evictOldest() {
+        Iterator<Integer> iterator = timelines.keySet().iterator();
+        while (timelines.size() > maxTimelines && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private class Timeline {
+        private final NavigableMap<Integer, Event> events = new TreeMap<>();
+        private boolean loaded;
+
+        // событие из базы может прийти и через append, поэтому ключ - eventId
+        private void add(Event event) {
+            events.put(event.getEventId(), event);
+            if (events.size() > capacity) {
+                events.pollFirstEntry();
+            }
+        }
+
+        private void addAll(List<Event> loaded) {
+            for (Event event : loaded) {
+                add(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Запись лайков. По умолчанию лайк сразу записывается в базу, при включённом write-behind
+ * лайки и их отмены складываются в буфер, разбитый на части по id фильма, и записываются фоновым потоком
+ * пакетами раз в flush-interval-ms или сразу, как только в буфере набирается целый пакет.
+ * Для каждой пары пользователь-фильм хранится только последнее состояние, а лайк и его отмена,
+ * ещё не записанные в базу, взаимно уничтожаются. Если пары нет в буфере, её состояние проверяется
+ * одним запросом по первичному ключу лайков, повторный лайк и отмена несуществующего лайка в буфер не попадают.
+ * Если в буфере max-pending пар, ставящий лайк поток сам сбрасывает буфер в базу.
+ * Лайки фильмов читаются через {@link #getLikes(List)}, которое накладывает буфер на данные из базы,
+ * поэтому незаписанный лайк сразу виден в ответах FilmService. Перед запросами, которые считают лайки
+ * в базе, буфер сбрасывается через {@link #flush()}, при остановке приложения дописывается всё,
+ * что осталось в буфере. При аварийном завершении процесса теряются лайки за последний flush-interval-ms.
+ * Если записать пакет не удалось, его лайки остаются в буфере до следующего сброса.
+ */
+@Component
+@Slf4j
+public class LikeWriter implements MetricsSource {
+    private static final int STRIPES = 64;
+
+    private final DBLikesStorage likesStorage;
+    private final boolean writeBehind;
+    private final int batchSize;
+    private final int maxPending;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final ScheduledExecutorService flushExecutor;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong backpressureFlushes = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    @Autowired
+    public LikeWriter(DBLikesStorage likesStorage,
+                      @Value("${filmorate.likes.write-behind.enabled:false}") boolean writeBehind,
+                      @Value("${filmorate.likes.write-behind.max-pending:100000}") int maxPending,
+                      @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                      @Value("${filmorate.likes.write-behind.flush-interval-ms:50}") long flushIntervalMillis) {
+        this.likesStorage = likesStorage;
+        this.writeBehind = writeBehind;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Stripe();
+        }
+
+        if (writeBehind) {
+            this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "like-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushExecutor.scheduleWithFixedDelay(this::flushQuietly,
+                    flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flushExecutor = null;
+        }
+    }
+
+    // false - лайк уже был с учётом буфера
+    public boolean addLike(int userId, int filmId) {
+        if (writeBehind) {
+            return buffer(userId, filmId, true);
+        }
+        return likesStorage.addLikeIfAbsent(userId, filmId);
+    }
+
+    // false - лайка не было с учётом буфера
+    public boolean removeLike(int userId, int filmId) {
+        if (writeBehind) {
+            return buffer(userId, filmId, false);
+        }
+        return likesStorage.deleteLike(userId, filmId);
+    }
+
+    // лайки фильмов из базы с наложенными незаписанными изменениями
+    public Map<Integer, Set<Integer>> getLikes(List<Film> films) {
+        if (!writeBehind) {
+            return likesStorage.getLikes(films);
+        }
+
+        // буфер читается до базы: пара, записанная между чтениями, окажется и в базе, и в снимке буфера
+        Map<Integer, Map<Integer, Boolean>> changes = new HashMap<>();
+        for (Film film : films) {
+            Stripe stripe = stripe(film.getId());
+            stripe.lock.lock();
+            try {
+                Map<Integer, PendingLike> filmLikes = stripe.films.get(film.getId());
+                if (filmLikes != null) {
+                    Map<Integer, Boolean> filmChanges = new HashMap<>();
+                    filmLikes.forEach((userId, like) -> filmChanges.put(userId, like.liked));
+                    changes.put(film.getId(), filmChanges);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        Map<Integer, Set<Integer>> result = likesStorage.getLikes(films);
+        changes.forEach((filmId, filmChanges) -> filmChanges.forEach((userId, liked) -> {
+            if (liked) {
+                result.get(filmId).add(userId);
+            } else {
+                result.get(filmId).remove(userId);
+            }
+        }));
+        return result;
+    }
+
+    // записывает в базу все изменения, попавшие в буфер до вызова
+    public void flush() {
+        if (!writeBehind) {
+            return;
+        }
+
+        flushLock.lock();
+        try {
+            List<PendingLike> batch = new ArrayList<>();
+            for (Stripe stripe : stripes) {
+                stripe.lock.lock();
+                try {
+                    for (Map<Integer, PendingLike> filmLikes : stripe.films.values()) {
+                        for (PendingLike like : filmLikes.values()) {
+                            if (!like.inFlight) {
+                                like.inFlight = true;
+                                batch.add(like);
+                            }
+                        }
+                    }
+                } finally {
+                    stripe.lock.unlock();
+                }
+
+                if (batch.size() >= batchSize) {
+                    writeBatch(batch);
+                    batch.clear();
+                }
+            }
+            writeBatch(batch);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!writeBehind) {
+            return;
+        }
+
+        closed = true;
+        flushExecutor.shutdown();
+        if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Фоновая запись лайков не завершилась за 5 секунд");
+        }
+        flush();
+        log.info("Запись лайков остановлена, записано изменений: {}, осталось в буфере: {}",
+                written.get(), pending.get());
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "likeWriter";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("writeBehind", writeBehind);
+        metrics.put("pending", pending.get());
+        metrics.put("maxPending", maxPending);
+        metrics.put("buffered", buffered.get());
+        // лайки, отменённые до записи, и повторные изменения одной пары в базу не пишутся
+        metrics.put("cancelled", cancelled.get());
+        metrics.put("written", written.get());
+        metrics.put("batches", batches.get());
+        metrics.put("avgBatchSize", batches.get() == 0 ? 0.0 : (double) written.get() / batches.get());
+        metrics.put("backpressureFlushes", backpressureFlushes.get());
+        metrics.put("failedBatches", failedBatches.get());
+        return metrics;
+    }
+
+    private boolean buffer(int userId, int filmId, boolean liked) {
+        Stripe stripe = stripe(filmId);
+        boolean changed;
+        while (true) {
+            long version;
+            stripe.lock.lock();
+            try {
+                Map<Integer, PendingLike> filmLikes = stripe.films.get(filmId);
+                PendingLike previous = filmLikes == null ? null : filmLikes.get(userId);
+                if (previous != null) {
+                    changed = replace(stripe, filmLikes, previous, liked);
+                    break;
+                }
+                version = stripe.version;
+            } finally {
+                stripe.lock.unlock();
+            }
+
+            // состояние пары в базе читается без блокировки, поэтому проверяется, что часть буфера не менялась
+            Boolean stored = likesStorage.findLike(userId, filmId);
+            if (stored == null) {
+                if (liked) {
+                    throw new UpdateNonExistObjectException("Film с указанным id = " + filmId + " не существует");
+                }
+                return false;
+            }
+
+            stripe.lock.lock();
+            try {
+                if (stripe.version != version) {
+                    continue;
+                }
+                if (stored == liked) {
+                    return false;
+                }
+                stripe.films.computeIfAbsent(filmId, id -> new HashMap<>())
+                        .put(userId, new PendingLike(userId, filmId, liked, stored));
+                ++stripe.version;
+                pending.incrementAndGet();
+                changed = true;
+                break;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        if (!changed) {
+            return false;
+        }
+        buffered.incrementAndGet();
+
+        if (closed) {
+            flush();
+        } else if (pending.get() >= maxPending) {
+            backpressureFlushes.incrementAndGet();
+            flush();
+        } else if (pending.get() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    flushScheduled.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+        return true;
+    }
+
+    // вызывается под блокировкой части буфера, false - пара уже в нужном состоянии
+    private boolean replace(Stripe stripe, Map<Integer, PendingLike> filmLikes, PendingLike previous, boolean liked) {
+        if (previous.liked == liked) {
+            return false;
+        }
+
+        cancelled.incrementAndGet();
+        ++stripe.version;
+        int userId = previous.userId;
+        int filmId = previous.filmId;
+        if (previous.inFlight) {
+            // записывается ли предыдущее изменение, неизвестно, поэтому новое будет записано в любом случае
+            filmLikes.put(userId, new PendingLike(userId, filmId, liked, null));
+        } else if (Boolean.valueOf(liked).equals(previous.stored)) {
+            filmLikes.remove(userId);
+            if (filmLikes.isEmpty()) {
+                stripe.films.remove(filmId);
+            }
+            pending.decrementAndGet();
+        } else {
+            filmLikes.put(userId, new PendingLike(userId, filmId, liked, previous.stored));
+        }
+        return true;
+    }
+
+    private void writeBatch(List<PendingLike> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<int[]> added = new ArrayList<>();
+        List<int[]> removed = new ArrayList<>();
+        for (PendingLike like : batch) {
+            (like.liked ? added : removed).add(new int[]{like.userId, like.filmId});
+        }
+
+        boolean success;
+        try {
+            likesStorage.applyLikes(added, removed);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+            success = true;
+        } catch (DataAccessException e) {
+            failedBatches.incrementAndGet();
+            log.error("Не удалось записать пакет из {} лайков, они останутся в буфере", batch.size(), e);
+            success = false;
+        }
+
+        for (PendingLike like : batch) {
+            Stripe stripe = stripe(like.filmId);
+            stripe.lock.lock();
+            try {
+                Map<Integer, PendingLike> filmLikes = stripe.films.get(like.filmId);
+                // изменение, заменённое во время записи новым, остаётся в буфере
+                if (filmLikes == null || filmLikes.get(like.userId) != like) {
+                    continue;
+                }
+                if (success) {
+                    ++stripe.version;
+                    filmLikes.remove(like.userId);
+                    if (filmLikes.isEmpty()) {
+                        stripe.films.remove(like.filmId);
+                    }
+                    pending.decrementAndGet();
+                } else {
+                    like.inFlight = false;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка при фоновой записи лайков", e);
+        }
+    }
+
+    private Stripe stripe(int filmId) {
+        return stripes[Math.floorMod(filmId, STRIPES)];
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Integer, Map<Integer, PendingLike>> films = new HashMap<>();
+        // увеличивается при каждом изменении части буфера
+        private long version;
+    }
+
+    private static class PendingLike {
+        private final int userId;
+        private final int filmId;
+        private final boolean liked;
+        // состояние пары в базе или null, если оно неизвестно
+        private final Boolean stored;
+        // изменяется под блокировкой части буфера
+        private boolean inFlight;
+
+        private PendingLike(int userId, int filmId, boolean liked, Boolean stored) {
+            this.userId = userId;
+            this.filmId = filmId;
+            this.liked = liked;
+            this.stored = stored;
+        }
+    }
+}
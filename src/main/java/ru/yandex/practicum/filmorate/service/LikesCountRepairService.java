@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+
+import java.util.Map;
+
+@Service
+@Slf4j
+public class LikesCountRepairService {
+    private final DBLikesStorage likesStorage;
+
+    @Autowired
+    public LikesCountRepairService(DBLikesStorage likesStorage) {
+        this.likesStorage = likesStorage;
+    }
+
+    // сверяет счётчики films.likes_count с таблицей likes при старте и далее с заданным интервалом
+    @Scheduled(initialDelay = 0, fixedDelayString = "${filmorate.likes-count.repair-interval-ms:3600000}")
+    @Transactional
+    public int repairLikesCount() {
+        Map<Integer, int[]> drift = likesStorage.getLikesCountDrift();
+
+        if (drift.isEmpty()) {
+            log.info("Счётчики лайков фильмов совпадают с таблицей likes");
+            return 0;
+        }
+
+        for (Map.Entry<Integer, int[]> entry : drift.entrySet()) {
+            log.warn("Расхождение счётчика лайков у фильма с id = {}: likes_count = {}, фактически = {}",
+                    entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+
+        int repaired = likesStorage.repairLikesCount();
+        log.warn("Исправлены счётчики лайков у {} фильмов", repaired);
+        return repaired;
+    }
+}
@@ -27,7 +27,7 @@ public class ReviewService {
     @Autowired
     public ReviewService(@Qualifier("dBReviewStorage") DBReviewStorage reviewStorage,
                          DBReviewUserLikesStorage reviewUserLikesStorage,
-                         @Qualifier("dBUserStorage") UserStorage userStorage,
+                         UserStorage userStorage,
                          @Qualifier("dBFilmStorage") FilmStorage filmStorage,
                          EventService eventService) {
         this.reviewStorage = reviewStorage;
@@ -46,7 +46,7 @@ public class ReviewService {
     }
 
     public Review addReview(Review review) {
-        userStorage.getUser(review.getUserId());
+        userStorage.checkExistsUser(review.getUserId());
         filmStorage.getFilm(review.getFilmId());
         Review createdReview = reviewStorage.addReview(review);
         eventService.crete(createdReview.getUserId(), createdReview.getReviewId(), EventType.REVIEW, Operation.ADD);
@@ -54,7 +54,7 @@ public class ReviewService {
     }
 
     public Review updateReview(Review review) {
-        userStorage.getUser(review.getUserId());
+        userStorage.checkExistsUser(review.getUserId());
         filmStorage.getFilm(review.getFilmId());
         Review updatedReview = reviewStorage.updateReview(review);
         eventService.crete(updatedReview.getUserId(), updatedReview.getReviewId(), EventType.REVIEW, Operation.UPDATE);
@@ -63,7 +63,7 @@ public class ReviewService {
 
     public Review addLikeToReview(int reviewId, int userId) {
         Review review = reviewStorage.getReview(reviewId);
-        userStorage.getUser(userId);
+        userStorage.checkExistsUser(userId);
 
         if (reviewUserLikesStorage.addLikeToReview(reviewId, userId)) {
             review.setUseful(review.getUseful() + 1);
@@ -76,7 +76,7 @@ public class ReviewService {
 
     public Review addDislikeToReview(int reviewId, int userId) {
         Review review = reviewStorage.getReview(reviewId);
-        userStorage.getUser(userId);
+        userStorage.checkExistsUser(userId);
 
         if (reviewUserLikesStorage.addDislikeToReview(reviewId, userId)) {
             review.setUseful(review.getUseful() - 1);
@@ -97,7 +97,7 @@ public class ReviewService {
 
     public Review deleteLikeToReview(int reviewId, int userId) {
         Review review = reviewStorage.getReview(reviewId);
-        userStorage.getUser(userId);
+        userStorage.checkExistsUser(userId);
 
         if (reviewUserLikesStorage.deleteReactionFromReview(reviewId, userId)) {
             review.setUseful(review.getUseful() - 1);
@@ -110,7 +110,7 @@ public class ReviewService {
 
     public Review deleteDislikeToReview(int reviewId, int userId) {
         Review review = reviewStorage.getReview(reviewId);
-        userStorage.getUser(userId);
+        userStorage.checkExistsUser(userId);
 
         if (reviewUserLikesStorage.deleteReactionFromReview(reviewId, userId)) {
             review.setUseful(review.getUseful() + 1);
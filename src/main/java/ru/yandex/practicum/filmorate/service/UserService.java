@@ -2,21 +2,28 @@ package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.exceptions.IncorrectObjectModificationException;
+import ru.yandex.practicum.filmorate.index.FilmCache;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.FriendshipGraph;
+import ru.yandex.practicum.filmorate.index.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.index.RecommendationCache;
+import ru.yandex.practicum.filmorate.index.RecommendationEngine;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.enumerations.EventType;
 import ru.yandex.practicum.filmorate.model.enumerations.Operation;
-import ru.yandex.practicum.filmorate.storage.DBFilmGenreStorage;
 import ru.yandex.practicum.filmorate.storage.DBFriendsStorage;
 import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,69 +32,114 @@ public class UserService {
     private final DBFriendsStorage friendsStorage;
     private final DBLikesStorage likesStorage;
     private final FilmStorage filmStorage;
-    private final DBFilmGenreStorage filmGenreStorage;
+    private final FilmCollector filmCollector;
     private final EventService eventService;
+    private final PopularityLeaderboard popularityLeaderboard;
+    private final RecommendationEngine recommendationEngine;
+    private final RecommendationCache recommendationCache;
+    private final FriendsTimelines friendsTimelines;
+    private final FriendshipGraph friendshipGraph;
+    private final FilmCache filmCache;
+    private final FilmSearchIndex filmSearchIndex;
+    private final LikeWriter likeWriter;
+    private final int maxSuggestions;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
     @Autowired
-    public UserService(@Qualifier("dBUserStorage") UserStorage userStorage,
+    public UserService(UserStorage userStorage,
                        @Qualifier("dBFilmStorage") FilmStorage filmStorage,
                        DBFriendsStorage friendsStorage,
                        DBLikesStorage likesStorage,
                        EventService eventService,
-                       DBFilmGenreStorage filmGenreStorage) {
+                       FilmCollector filmCollector,
+                       PopularityLeaderboard popularityLeaderboard,
+                       RecommendationEngine recommendationEngine,
+                       RecommendationCache recommendationCache,
+                       FriendsTimelines friendsTimelines,
+                       FriendshipGraph friendshipGraph,
+                       FilmCache filmCache,
+                       FilmSearchIndex filmSearchIndex,
+                       LikeWriter likeWriter,
+                       @Value("${filmorate.friends.suggestions.max-count:100}") int maxSuggestions,
+                       @Value("${filmorate.list.default-page-size:100}") int defaultPageSize,
+                       @Value("${filmorate.list.max-page-size:1000}") int maxPageSize) {
         this.userStorage = userStorage;
         this.friendsStorage = friendsStorage;
         this.likesStorage = likesStorage;
         this.filmStorage = filmStorage;
-        this.filmGenreStorage = filmGenreStorage;
+        this.filmCollector = filmCollector;
         this.eventService = eventService;
+        this.popularityLeaderboard = popularityLeaderboard;
+        this.recommendationEngine = recommendationEngine;
+        this.recommendationCache = recommendationCache;
+        this.friendsTimelines = friendsTimelines;
+        this.friendshipGraph = friendshipGraph;
+        this.filmCache = filmCache;
+        this.filmSearchIndex = filmSearchIndex;
+        this.likeWriter = likeWriter;
+        this.maxSuggestions = maxSuggestions;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
     public List<User> getAllUsers() {
         return new ArrayList<>(userStorage.getAllUsers().values());
     }
 
+    // страница пользователей после пользователя afterId, следующая страница запрашивается с id последнего пользователя
+    public List<User> getUsersPage(int afterId, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+        return userStorage.getUsersPage(afterId, pageSize);
+    }
+
+    public void streamAllUsers(Consumer<User> action) {
+        userStorage.forEachUser(action);
+    }
+
     public User getUser(int userId) {
         return userStorage.getUser(userId);
     }
 
     public List<User> getFriends(int userId) {
         // проверка на существование User
-        userStorage.getUser(userId);
-
-        Set<Integer> friendsId = friendsStorage.getFriends(userId);
-        List<User> friends = new ArrayList<>();
-        Map<Integer, User> users = userStorage.getAllUsers();
+        userStorage.checkExistsUser(userId);
 
-        for (int id : friendsId) {
-            friends.add(users.get(id));
-        }
-
-        return friends;
+        return friendsStorage.getFriendUsers(userId);
     }
 
     public List<User> getSameFriends(int userId, int otherId) {
         // проверка на существование User
-        userStorage.getUser(userId);
-        userStorage.getUser(otherId);
+        userStorage.checkExistsUser(userId);
+        userStorage.checkExistsUser(otherId);
 
-        Set<Integer> userFriends = friendsStorage.getFriends(userId);
-        userFriends.retainAll(friendsStorage.getFriends(otherId));
+        return userStorage.getUsers(toSet(friendshipGraph.getCommonFriends(userId, otherId)));
+    }
 
-        List<User> sameFriends = new ArrayList<>();
-        Map<Integer, User> users = userStorage.getAllUsers();
+    public List<User> getFriendSuggestions(int userId, int count) {
+        // проверка на существование User
+        userStorage.checkExistsUser(userId);
 
-        for (int id : userFriends) {
-            sameFriends.add(users.get(id));
-        }
+        List<Integer> userIds = friendshipGraph.suggestFriends(userId, Math.min(count, maxSuggestions));
+        Map<Integer, User> users = userStorage.getUsers(userIds).stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
 
-        return sameFriends;
+        return userIds.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     public User addUser(User user) {
         return userStorage.addUser(user);
     }
 
+    // добавляет порцию пользователей в одной транзакции
+    @Transactional
+    public List<User> addUsers(List<User> users) {
+        return userStorage.addUsers(users);
+    }
+
     public User updateUser(User user) {
         return userStorage.updateUser(user);
     }
@@ -100,15 +152,17 @@ public class UserService {
 
         // проверка на существование пользователей
         User user = userStorage.getUser(userId);
-        userStorage.getUser(friendId);
+        userStorage.checkExistsUser(friendId);
 
-        if (friendsStorage.getFriends(userId).contains(friendId)) {
+        if (friendshipGraph.hasFriend(userId, friendId)) {
             throw new IncorrectObjectModificationException("Данный пользователь с friendId = " + friendId
                     + " уже добавлен в друзья пользователя с userId = " + userId);
         }
 
         friendsStorage.addFriend(userId, friendId);
-        user.setFriends(new HashSet<>(friendsStorage.getFriends(userId)));
+        friendshipGraph.addFriend(userId, friendId);
+        friendsTimelines.addFriend(userId);
+        user.setFriends(toSet(friendshipGraph.getFriends(userId)));
 
         eventService.crete(userId, friendId, EventType.FRIEND, Operation.ADD);
 
@@ -116,7 +170,20 @@ public class UserService {
     }
 
     public User deleteUser(int userId) {
-        return userStorage.deleteUser(userId);
+        // список лайкнутых фильмов читается из базы
+        likeWriter.flush();
+        Set<Integer> likedFilms = likesStorage.getLikesFilm(userId);
+        User user = userStorage.deleteUser(userId);
+        popularityLeaderboard.removeLikes(likedFilms);
+        filmSearchIndex.removeLikes(likedFilms);
+        for (int filmId : likedFilms) {
+            filmCache.removeLike(filmId, userId);
+        }
+        recommendationEngine.removeUser(userId);
+        recommendationCache.invalidateAll();
+        friendsTimelines.removeUser(userId);
+        friendshipGraph.removeUser(userId);
+        return user;
     }
 
     public User deleteFriend(int userId, int friendId) {
@@ -127,15 +194,17 @@ public class UserService {
 
         // проверка на существование пользователей
         User user = userStorage.getUser(userId);
-        userStorage.getUser(friendId);
+        userStorage.checkExistsUser(friendId);
 
-        if (!friendsStorage.getFriends(userId).contains(friendId)) {
+        if (!friendshipGraph.hasFriend(userId, friendId)) {
             throw new IncorrectObjectModificationException("Данный пользователь с friendId = " + friendId
                     + " не находится в друзья пользователя с userId = " + userId);
         }
 
         friendsStorage.deleteFriend(userId, friendId);
-        user.setFriends(friendsStorage.getFriends(userId));
+        friendshipGraph.deleteFriend(userId, friendId);
+        friendsTimelines.deleteFriend(userId, friendId);
+        user.setFriends(toSet(friendshipGraph.getFriends(userId)));
 
         eventService.crete(userId, friendId, EventType.FRIEND, Operation.REMOVE);
 
@@ -146,45 +215,32 @@ public class UserService {
         // проверка на существование пользователя
         getUser(userId);
 
-        Map<Integer, List<Integer>> allUsers = likesStorage.getUsersLikes();
-        List<Integer> userList = allUsers.getOrDefault(userId, Collections.emptyList());
+        List<Integer> filmIds = recommendationCache.getRecommendations(userId);
 
-        if (userList.isEmpty()) {
+        if (filmIds.isEmpty()) {
             return Collections.emptyList();
         }
 
-        Map<Integer, Integer> recMap = allUsers.entrySet().stream()
-                .filter(entry -> entry.getKey() != userId)
-                .collect(Collectors.toMap(Map.Entry::getKey, entry -> {
-                    List<Integer> friendList = entry.getValue();
-                    return (int) userList.stream().filter(friendList::contains).count();
-                }));
-
-        if (recMap.isEmpty()) {
-            return Collections.emptyList();
-        }
+        Map<Integer, Film> films = filmStorage.getFilm(filmIds).stream()
+                .collect(Collectors.toMap(Film::getId, film -> film));
 
-        int friendId = Collections.max(recMap.entrySet(), Map.Entry.comparingByValue()).getKey();
-        List<Integer> friendList = allUsers.getOrDefault(friendId, Collections.emptyList())
-                .stream()
-                .filter(id -> !userList.contains(id))
-                .collect(Collectors.toList());
+        return filmCollector.collectFilms(filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
 
-        List<Film> recommendationFilms = filmStorage.getFilm(friendList);
-        Map<Integer, Set<Genre>> filmGenresMap = filmGenreStorage.getFilmGenre(recommendationFilms);
-        Map<Integer, Set<Integer>> filmLikesMap = likesStorage.getLikes(recommendationFilms);
+    public List<Event> getFeedByUserId(int userId, int afterEventId, Integer limit) {
+        userStorage.checkExistsUser(userId);
+        return eventService.getByUserId(userId, afterEventId, limit);
+    }
 
-        return recommendationFilms.stream()
-                .peek(film -> {
-                    film.setGenres(filmGenresMap.get(film.getId()).stream()
-                            .sorted(Comparator.comparingInt(Genre::getId))
-                            .collect(Collectors.toCollection(LinkedHashSet::new)));
-                    film.setUserLikes(filmLikesMap.get(film.getId()));
-                }).collect(Collectors.toList());
+    public List<Event> getFriendsFeed(int userId, Integer limit) {
+        userStorage.checkExistsUser(userId);
+        return eventService.getFriendsFeed(userId, limit);
     }
 
-    public List<Event> getAllFeedByUserId(int userId) {
-        userStorage.getUser(userId);
-        return eventService.getAllByUserId(userId);
+    private static Set<Integer> toSet(int[] ids) {
+        return Arrays.stream(ids).boxed().collect(Collectors.toCollection(HashSet::new));
     }
-}
\ No newline at end of file
+}
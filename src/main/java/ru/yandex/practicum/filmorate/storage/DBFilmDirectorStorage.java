@@ -10,10 +10,8 @@ import ru.yandex.practicum.filmorate.storage.director.DBDirectorStorage;
 import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
 
 import java.sql.PreparedStatement;
-import java.util.Comparator;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
+import java.sql.ResultSet;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Component("dBFilmDirectorStorage")
@@ -36,6 +34,28 @@ public class DBFilmDirectorStorage {
                 .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
+    // id режиссёров фильмов без обращения к таблице directors, у фильмов без режиссёров - пустое множество
+    public Map<Integer, Set<Integer>> getFilmDirectorIds(List<Film> films) {
+        Map<Integer, Set<Integer>> result = new HashMap<>();
+        for (Film film : films) {
+            result.put(film.getId(), new LinkedHashSet<>());
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+
+        String inSql = String.join(",", Collections.nCopies(result.size(), "?"));
+        String sqlQuery = String.format("SELECT film_id, director_id FROM film_directors " +
+                "WHERE film_id IN (%s) " +
+                "ORDER BY director_id;", inSql);
+
+        jdbcTemplate.query(sqlQuery, (ResultSet rs) -> {
+            result.get(rs.getInt("film_id")).add(rs.getInt("director_id"));
+        }, result.keySet().toArray());
+
+        return result;
+    }
+
     public List<Film> getDirectorFilms(int directorId, SortType sort) {
         String sqlQuery;
         String sqlQueryOrderYear = "SELECT *,m.name AS mpa_name FROM films AS f " +
@@ -43,12 +63,11 @@ public class DBFilmDirectorStorage {
                 "JOIN film_directors fd ON f.film_id = fd.film_id " +
                 "WHERE fd.director_id = ? " +
                 "ORDER BY EXTRACT(YEAR FROM f.release_date) ASC;";
-        String sqlQueryOrderLikes = "SELECT f.*, m.name AS mpa_name, COUNT(l.user_id) AS total_likes FROM films f JOIN film_directors fd " +
-                "ON fd.film_id = f.film_id JOIN directors d ON d.director_id = fd.director_id LEFT JOIN  likes l " +
-                "ON l.film_id = f.film_id JOIN mpa m ON f.mpa_id = m.mpa_id " +
-                "WHERE d.director_id = ? " +
-                "GROUP BY f.film_id, d.director_id " +
-                "ORDER BY total_likes DESC;";
+        String sqlQueryOrderLikes = "SELECT *, m.name AS mpa_name FROM films AS f " +
+                "JOIN mpa m ON f.mpa_id = m.mpa_id " +
+                "JOIN film_directors fd ON f.film_id = fd.film_id " +
+                "WHERE fd.director_id = ? " +
+                "ORDER BY f.likes_count DESC;";
 
         if (sort.equals(SortType.LIKES)) {
             sqlQuery = sqlQueryOrderLikes;
@@ -72,6 +91,23 @@ public class DBFilmDirectorStorage {
                 });
     }
 
+    // режиссёры сразу нескольких фильмов одним пакетом
+    public void addFilmDirectors(List<Film> films) {
+        List<int[]> rows = new ArrayList<>();
+        for (Film film : films) {
+            for (Director director : film.getDirectors()) {
+                rows.add(new int[]{film.getId(), director.getId()});
+            }
+        }
+        jdbcTemplate.batchUpdate(SQL_INSERT_RELATION_DIRECTOR_AND_FILM,
+                rows,
+                1000,
+                (PreparedStatement ps, int[] row) -> {
+                    ps.setInt(1, row[0]);
+                    ps.setInt(2, row[1]);
+                });
+    }
+
     public void deleteFilmDirector(int filmId, int directorId) {
         String sqlQuery = "DELETE FROM film_directors WHERE film_id = ? AND director_id = ?;";
         jdbcTemplate.update(sqlQuery, filmId, directorId);
@@ -33,22 +33,24 @@ public class DBFilmGenreStorage {
                 .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
-    public Map<Integer, Set<Genre>> getFilmGenre(List<Film> films) {
-        String inSql = String.join(",", Collections.nCopies(films.size(), "?"));
-        String sqlQuery = String.format("SELECT fg.film_id, g.genre_id, g.name FROM film_genres AS fg " +
-                "JOIN genres AS g ON fg.genre_id = g.genre_id " +
-                "WHERE fg.film_id in (%s) " +
-                "ORDER BY g.genre_id;", inSql);
+    // id жанров фильмов без обращения к таблице genres, у фильмов без жанров - пустое множество
+    public Map<Integer, Set<Integer>> getFilmGenreIds(List<Film> films) {
+        Map<Integer, Set<Integer>> result = new HashMap<>();
+        for (Film film : films) {
+            result.put(film.getId(), new LinkedHashSet<>());
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
 
-        Map<Integer, Set<Genre>> result = films.stream().collect(Collectors.toMap(Film::getId, Film::getGenres));
+        String inSql = String.join(",", Collections.nCopies(result.size(), "?"));
+        String sqlQuery = String.format("SELECT film_id, genre_id FROM film_genres " +
+                "WHERE film_id IN (%s) " +
+                "ORDER BY genre_id;", inSql);
 
-        jdbcTemplate.query(sqlQuery, result.keySet().toArray(), (ResultSet rs) -> {
-            int filmId = rs.getInt("film_id");
-            Genre genre = new Genre();
-            genre.setId(rs.getInt("genre_id"));
-            genre.setName(rs.getString("name"));
-            result.get(filmId).add(genre);
-        });
+        jdbcTemplate.query(sqlQuery, (ResultSet rs) -> {
+            result.get(rs.getInt("film_id")).add(rs.getInt("genre_id"));
+        }, result.keySet().toArray());
 
         return result;
     }
@@ -67,6 +69,23 @@ public class DBFilmGenreStorage {
                 });
     }
 
+    // жанры сразу нескольких фильмов одним пакетом
+    public void addFilmGenres(List<Film> films) {
+        List<int[]> rows = new ArrayList<>();
+        for (Film film : films) {
+            for (Genre genre : film.getGenres()) {
+                rows.add(new int[]{film.getId(), genre.getId()});
+            }
+        }
+        jdbcTemplate.batchUpdate(SQL_INSERT_RELATION_GENRE_AND_FILM,
+                rows,
+                1000,
+                (PreparedStatement ps, int[] row) -> {
+                    ps.setInt(1, row[0]);
+                    ps.setInt(2, row[1]);
+                });
+    }
+
     public void deleteFilmGenre(int filmId, int genreId) {
         String sqlQuery = "DELETE FROM film_genres WHERE film_id = ? AND genre_id = ?;";
         jdbcTemplate.update(sqlQuery, filmId, genreId);
@@ -3,8 +3,14 @@ package ru.yandex.practicum.filmorate.storage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
 
+import java.sql.ResultSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Component
@@ -24,6 +30,24 @@ public class DBFriendsStorage {
                 userId));
     }
 
+    public List<User> getFriendUsers(int userId) {
+        String sqlQuery = "SELECT u.* FROM friends f " +
+                "JOIN users u ON u.user_id = f.friend_id " +
+                "WHERE f.user_id = ? " +
+                "ORDER BY u.user_id;";
+        return jdbcTemplate.query(sqlQuery, DBUserStorage::createUser, userId);
+    }
+
+    // для каждого пользователя - те, кто добавил его в друзья
+    public Map<Integer, Set<Integer>> getFollowers() {
+        String sqlQuery = "SELECT user_id, friend_id FROM friends;";
+        Map<Integer, Set<Integer>> result = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, (ResultSet rs) -> {
+            result.computeIfAbsent(rs.getInt("friend_id"), id -> new HashSet<>()).add(rs.getInt("user_id"));
+        });
+        return result;
+    }
+
     public void addFriend(int userId, int friendId) {
         String sqlQuery = "INSERT INTO friends (user_id, friend_id) " +
                 "VALUES (?, ?);";
@@ -1,8 +1,12 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.sql.PreparedStatement;
@@ -16,6 +20,17 @@ public class DBLikesStorage {
     private final JdbcTemplate jdbcTemplate;
     private static final String SQL_INSERT_LIKES = "INSERT INTO likes (user_id, film_id) " +
             "VALUES (?, ?);";
+    // лайк удалённого пользователя или фильма и уже существующий лайк пропускаются
+    private static final String SQL_INSERT_LIKE_IF_ABSENT = "INSERT INTO likes (user_id, film_id) " +
+            "SELECT u.user_id, f.film_id FROM users u JOIN films f ON f.film_id = ? " +
+            "WHERE u.user_id = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM likes l WHERE l.user_id = u.user_id AND l.film_id = f.film_id);";
+    private static final String SQL_DECREMENT_USER_FILMS_LIKES = "UPDATE films " +
+            "SET likes_count = likes_count - 1 " +
+            "WHERE film_id IN (SELECT film_id FROM likes WHERE user_id = ?);";
+    private static final String SQL_RECOUNT_FILM_LIKES = "UPDATE films " +
+            "SET likes_count = (SELECT COUNT(*) FROM likes WHERE film_id = ?) " +
+            "WHERE film_id = ?;";
 
     @Autowired
     public DBLikesStorage(JdbcTemplate jdbcTemplate) {
@@ -29,6 +44,14 @@ public class DBLikesStorage {
                 filmId));
     }
 
+    // есть ли лайк пользователя у фильма или null, если фильма нет
+    public Boolean findLike(int userId, int filmId) {
+        String sqlQuery = "SELECT EXISTS (SELECT 1 FROM likes WHERE user_id = ? AND film_id = f.film_id) " +
+                "FROM films f WHERE f.film_id = ?;";
+        List<Boolean> result = jdbcTemplate.queryForList(sqlQuery, Boolean.class, userId, filmId);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
     public Map<Integer, Set<Integer>> getLikes(List<Film> films) {
         String inSql = String.join(",", Collections.nCopies(films.size(), "?"));
         String sqlQuery = String.format("SELECT user_id, film_id FROM likes WHERE film_id in (%s);", inSql);
@@ -43,10 +66,32 @@ public class DBLikesStorage {
         return result;
     }
 
+    @Transactional
     public void addLike(int userId, int filmId) {
         jdbcTemplate.update(SQL_INSERT_LIKES, userId, filmId);
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count + 1 WHERE film_id = ?;", filmId);
+    }
+
+    // существование фильма и лайка проверяется первичным и внешним ключами, false - лайк уже был
+    @Transactional
+    public boolean addLikeIfAbsent(int userId, int filmId) {
+        try {
+            jdbcTemplate.update(SQL_INSERT_LIKES, userId, filmId);
+        } catch (DuplicateKeyException e) {
+            return false;
+        } catch (DataIntegrityViolationException e) {
+            // пользователь мог быть удалён после проверки его существования, поэтому ключ определяется по имени
+            String message = String.valueOf(e.getMostSpecificCause().getMessage()).toUpperCase();
+            if (message.contains("LIKES_USER_FK")) {
+                throw new UpdateNonExistObjectException("User с указанным id = " + userId + " не существует");
+            }
+            throw new UpdateNonExistObjectException("Film с указанным id = " + filmId + " не существует");
+        }
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count + 1 WHERE film_id = ?;", filmId);
+        return true;
     }
 
+    @Transactional
     public void addLike(int filmId, Set<Integer> likeUsers) {
         jdbcTemplate.batchUpdate(SQL_INSERT_LIKES,
                 likeUsers,
@@ -55,21 +100,109 @@ public class DBLikesStorage {
                     ps.setInt(1, userId);
                     ps.setInt(2, filmId);
                 });
+        jdbcTemplate.update(SQL_RECOUNT_FILM_LIKES, filmId, filmId);
     }
 
-    public void deleteLike(int userId, int filmId) {
+    // лайки сразу нескольких новых фильмов одним пакетом, likes_count заполняется при добавлении фильмов
+    public void addFilmsLikes(List<Film> films) {
+        List<int[]> rows = new ArrayList<>();
+        for (Film film : films) {
+            for (int userId : film.getUserLikes()) {
+                rows.add(new int[]{userId, film.getId()});
+            }
+        }
+        jdbcTemplate.batchUpdate(SQL_INSERT_LIKES,
+                rows,
+                1000,
+                (PreparedStatement ps, int[] row) -> {
+                    ps.setInt(1, row[0]);
+                    ps.setInt(2, row[1]);
+                });
+    }
+
+    // пары {userId, filmId}: добавляемые и удаляемые лайки, счётчики затронутых фильмов пересчитываются
+    @Transactional
+    public void applyLikes(List<int[]> added, List<int[]> removed) {
+        jdbcTemplate.batchUpdate(SQL_INSERT_LIKE_IF_ABSENT,
+                added,
+                1000,
+                (PreparedStatement ps, int[] like) -> {
+                    ps.setInt(1, like[1]);
+                    ps.setInt(2, like[0]);
+                });
+        jdbcTemplate.batchUpdate("DELETE FROM likes WHERE user_id = ? AND film_id = ?;",
+                removed,
+                1000,
+                (PreparedStatement ps, int[] like) -> {
+                    ps.setInt(1, like[0]);
+                    ps.setInt(2, like[1]);
+                });
+
+        Set<Integer> filmIds = new TreeSet<>();
+        added.forEach(like -> filmIds.add(like[1]));
+        removed.forEach(like -> filmIds.add(like[1]));
+        jdbcTemplate.batchUpdate(SQL_RECOUNT_FILM_LIKES,
+                filmIds,
+                1000,
+                (PreparedStatement ps, Integer filmId) -> {
+                    ps.setInt(1, filmId);
+                    ps.setInt(2, filmId);
+                });
+    }
+
+    // false - лайка не было
+    @Transactional
+    public boolean deleteLike(int userId, int filmId) {
         String sqlQuery = "DELETE FROM likes WHERE user_id = ? AND film_id = ?;";
-        jdbcTemplate.update(sqlQuery, userId, filmId);
+        if (jdbcTemplate.update(sqlQuery, userId, filmId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count - 1 WHERE film_id = ?;", filmId);
+        return true;
     }
 
+    @Transactional
     public void deleteUserLikes(int userId) {
+        jdbcTemplate.update(SQL_DECREMENT_USER_FILMS_LIKES, userId);
         String sqlQuery = "DELETE FROM likes WHERE user_id = ?;";
         jdbcTemplate.update(sqlQuery, userId);
     }
 
+    @Transactional
     public void deleteFilmLikes(int filmId) {
         String sqlQuery = "DELETE FROM likes WHERE film_id = ?;";
         jdbcTemplate.update(sqlQuery, filmId);
+        jdbcTemplate.update("UPDATE films SET likes_count = 0 WHERE film_id = ?;", filmId);
+    }
+
+    public Map<Integer, Integer> getLikesCount() {
+        String sqlQuery = "SELECT film_id, COUNT(user_id) AS likes_count FROM likes GROUP BY film_id;";
+        Map<Integer, Integer> result = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, (ResultSet rs) -> {
+            result.put(rs.getInt("film_id"), rs.getInt("likes_count"));
+        });
+        return result;
+    }
+
+    // возвращает фильмы, у которых счётчик likes_count расходится с таблицей likes: filmId -> {счётчик, факт}
+    public Map<Integer, int[]> getLikesCountDrift() {
+        String sqlQuery = "SELECT f.film_id, f.likes_count, COUNT(l.user_id) AS actual_count " +
+                "FROM films f " +
+                "LEFT JOIN likes l ON f.film_id = l.film_id " +
+                "GROUP BY f.film_id " +
+                "HAVING f.likes_count <> COUNT(l.user_id);";
+        Map<Integer, int[]> result = new LinkedHashMap<>();
+        jdbcTemplate.query(sqlQuery, (ResultSet rs) -> {
+            result.put(rs.getInt("film_id"), new int[]{rs.getInt("likes_count"), rs.getInt("actual_count")});
+        });
+        return result;
+    }
+
+    public int repairLikesCount() {
+        String sqlQuery = "UPDATE films f " +
+                "SET likes_count = (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.film_id) " +
+                "WHERE likes_count <> (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.film_id);";
+        return jdbcTemplate.update(sqlQuery);
     }
 
     public Set<Integer> getLikesFilm(int userId) {
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Изменения схемы, которые нельзя безопасно выразить в schema.sql для баз, созданных раньше.
+ * Внешние ключи schema.sql добавляет по именам с суффиксом _FK, а безымянные ключи на тех же столбцах,
+ * созданные прежними версиями схемы, имеют имена, назначенные базой, поэтому находятся по INFORMATION_SCHEMA
+ * и удаляются здесь. Без этого прежний ключ без ON DELETE CASCADE запрещал бы удаление фильмов и пользователей.
+ * Уникальные индексы создаются здесь, а не в schema.sql: прежние версии не проверяли уникальность email и login
+ * при обновлении пользователя, и на дубликатах ошибка создания индекса не дала бы приложению запуститься.
+ * Если дубликаты есть, приложение не запускается, а повторяющиеся строки перечисляются в сообщении об ошибке:
+ * хранилища проверяют уникальность только через индексы и без них сохраняли бы новые дубликаты.
+ */
+@Component
+@Slf4j
+public class DBSchemaMigration {
+    private static final String SQL_GET_FOREIGN_KEYS = "SELECT r.constraint_name, k.table_name, k.column_name "
+            + "FROM INFORMATION_SCHEMA.REFERENTIAL_CONSTRAINTS r "
+            + "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE k ON k.constraint_schema = r.constraint_schema "
+            + "AND k.constraint_name = r.constraint_name "
+            + "WHERE r.constraint_schema = SCHEMA();";
+
+    private static final List<UniqueIndex> UNIQUE_INDEXES = List.of(
+            new UniqueIndex("users_email_uq", "users", "email", "user_id"),
+            new UniqueIndex("users_login_uq", "users", "login", "user_id"),
+            new UniqueIndex("reviews_user_film_uq", "reviews", "user_id, film_id", "review_id"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public DBSchemaMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        dropReplacedForeignKeys();
+        UNIQUE_INDEXES.forEach(this::createUniqueIndex);
+    }
+
+    private void dropReplacedForeignKeys() {
+        // имена внешних ключей по таблице и столбцу
+        Map<String, List<String>> foreignKeys = new LinkedHashMap<>();
+        jdbcTemplate.query(SQL_GET_FOREIGN_KEYS, resultSet -> {
+            String column = resultSet.getString("table_name") + "." + resultSet.getString("column_name");
+            foreignKeys.computeIfAbsent(column, key -> new ArrayList<>()).add(resultSet.getString("constraint_name"));
+        });
+
+        foreignKeys.forEach((column, names) -> {
+            if (names.stream().noneMatch(name -> name.endsWith("_FK"))) {
+                return;
+            }
+            String table = column.substring(0, column.indexOf('.'));
+            for (String name : names) {
+                if (!name.endsWith("_FK")) {
+                    jdbcTemplate.execute("ALTER TABLE " + table + " DROP CONSTRAINT IF EXISTS " + name + ";");
+                    log.info("Удалён прежний внешний ключ {} на {}", name, column);
+                }
+            }
+        });
+    }
+
+    private void createUniqueIndex(UniqueIndex index) {
+        Integer exists = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES "
+                + "WHERE index_schema = SCHEMA() AND index_name = ?;", Integer.class, index.name.toUpperCase());
+        if (exists != null && exists > 0) {
+            return;
+        }
+
+        String value = Arrays.stream(index.columns.split(", "))
+                .map(column -> "CAST(" + column + " AS VARCHAR)")
+                .collect(Collectors.joining(" || ', ' || "));
+        String sqlQuery = String.format("SELECT %s AS duplicate_value, "
+                        + "LISTAGG(CAST(%s AS VARCHAR), ', ') WITHIN GROUP (ORDER BY %s) AS ids "
+                        + "FROM %s GROUP BY %s HAVING COUNT(*) > 1;",
+                value, index.idColumn, index.idColumn, index.table, index.columns);
+        List<String> duplicates = jdbcTemplate.query(sqlQuery, (resultSet, rowNum) ->
+                "(" + resultSet.getString("duplicate_value") + ") у строк с " + index.idColumn
+                        + " = " + resultSet.getString("ids"));
+
+        if (!duplicates.isEmpty()) {
+            throw new IllegalStateException(String.format("Уникальный индекс %s не создан: в %s повторяются "
+                            + "значения (%s). Исправьте строки и перезапустите приложение:\n%s",
+                    index.name, index.table, index.columns, String.join("\n", duplicates)));
+        }
+
+        jdbcTemplate.execute(String.format("CREATE UNIQUE INDEX IF NOT EXISTS %s ON %s (%s);",
+                index.name, index.table, index.columns));
+        log.info("Создан уникальный индекс {}", index.name);
+    }
+
+    private static class UniqueIndex {
+        private final String name;
+        private final String table;
+        private final String columns;
+        private final String idColumn;
+
+        private UniqueIndex(String name, String table, String columns, String idColumn) {
+            this.name = name;
+            this.table = table;
+            this.columns = columns;
+            this.idColumn = idColumn;
+        }
+    }
+}
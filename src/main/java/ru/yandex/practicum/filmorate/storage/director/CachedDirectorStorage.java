@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.storage.director;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.DBFilmDirectorStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш режиссёров перед {@link DBDirectorStorage}. Режиссёры загружаются целиком при запуске,
+ * изменения через DirectorService проходят через этот класс и сразу обновляют кэш.
+ * Режиссёр, которого нет в кэше, читается из базы и добавляется в кэш.
+ * Режиссёры фильмов собираются по id из film_directors без соединения с таблицей directors.
+ * Объекты из кэша общие для всех фильмов и не должны изменяться, поэтому при записи в кэш кладётся копия.
+ */
+@Primary
+@Component("cachedDirectorStorage")
+public class CachedDirectorStorage implements DirectorStorage, MetricsSource {
+    private final DirectorStorage directorStorage;
+    private final DBFilmDirectorStorage filmDirectorStorage;
+
+    private final Map<Integer, Director> directors = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public CachedDirectorStorage(@Qualifier("dBDirectorStorage") DirectorStorage directorStorage,
+                                 DBFilmDirectorStorage filmDirectorStorage) {
+        this.directorStorage = directorStorage;
+        this.filmDirectorStorage = filmDirectorStorage;
+    }
+
+    @PostConstruct
+    public void preload() {
+        directors.clear();
+        for (Director director : directorStorage.getAllDirectors()) {
+            directors.put(director.getId(), director);
+        }
+    }
+
+    @Override
+    public List<Director> getAllDirectors() {
+        hits.incrementAndGet();
+        List<Director> result = new ArrayList<>(directors.values());
+        result.sort(Comparator.comparingInt(Director::getId));
+        return result;
+    }
+
+    @Override
+    public Director getDirector(int directorId) {
+        Director director = directors.get(directorId);
+        if (director != null) {
+            hits.incrementAndGet();
+            return director;
+        }
+
+        misses.incrementAndGet();
+        director = directorStorage.getDirector(directorId);
+        directors.put(directorId, director);
+        return director;
+    }
+
+    @Override
+    public Map<Integer, Set<Director>> getDirectorByFilm(List<Film> films) {
+        Map<Integer, Set<Director>> result = new HashMap<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : filmDirectorStorage.getFilmDirectorIds(films).entrySet()) {
+            Set<Director> filmDirectors = new LinkedHashSet<>();
+            for (int directorId : entry.getValue()) {
+                filmDirectors.add(getDirector(directorId));
+            }
+            result.put(entry.getKey(), filmDirectors);
+        }
+        return result;
+    }
+
+    @Override
+    public Director addDirector(Director director) {
+        directorStorage.addDirector(director);
+        directors.put(director.getId(), copy(director));
+        return director;
+    }
+
+    @Override
+    public Director updateDirector(Director director) {
+        directorStorage.updateDirector(director);
+        directors.put(director.getId(), copy(director));
+        invalidations.incrementAndGet();
+        return director;
+    }
+
+    @Override
+    public Director deleteDirector(int directorId) {
+        Director director = directorStorage.deleteDirector(directorId);
+        directors.remove(directorId);
+        invalidations.incrementAndGet();
+        return director;
+    }
+
+    @Override
+    public Director checkContainsDirector(int directorId) {
+        return getDirector(directorId);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "directorCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", directors.size());
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("invalidations", invalidations.get());
+        return metrics;
+    }
+
+    private static Director copy(Director director) {
+        return Director.builder()
+                .id(director.getId())
+                .name(director.getName())
+                .build();
+    }
+}
@@ -62,7 +62,9 @@ public class DBDirectorStorage implements DirectorStorage {
 
     @Override
     public Director addDirector(Director director) {
-        checkNonContainsDirector(director.getId());
+        if (director.getId() != 0) {
+            checkNonContainsDirector(director.getId());
+        }
 
         String sqlQuery = "INSERT INTO directors (name)" +
                 "VALUES (?);";
@@ -81,17 +83,19 @@ public class DBDirectorStorage implements DirectorStorage {
 
     @Override
     public Director updateDirector(Director director) {
-        checkContainsDirector(director.getId());
-
         String sqlQuery = "UPDATE directors " +
                 "SET name = ?" +
                 "WHERE director_id = ?;";
 
-        jdbcTemplate.update(sqlQuery,
+        int updated = jdbcTemplate.update(sqlQuery,
                 director.getName(),
                 director.getId()
         );
 
+        if (updated == 0) {
+            throw nonExistDirector(director.getId());
+        }
+
         return director;
     }
 
@@ -119,12 +123,16 @@ public class DBDirectorStorage implements DirectorStorage {
         List<Director> director = jdbcTemplate.query(sqlQuery, DBDirectorStorage::createDirector, directorId);
 
         if (director.size() != 1) {
-            throw new UpdateNonExistObjectException("Director с указанным id = " + directorId + " не существует");
+            throw nonExistDirector(directorId);
         }
 
         return director.get(0);
     }
 
+    private static UpdateNonExistObjectException nonExistDirector(int directorId) {
+        return new UpdateNonExistObjectException("Director с указанным id = " + directorId + " не существует");
+    }
+
     public static Director createDirector(ResultSet resultSet, int rowNum) throws SQLException {
         return Director.builder()
                 .id(resultSet.getInt("director_id"))
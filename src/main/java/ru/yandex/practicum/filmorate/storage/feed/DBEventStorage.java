@@ -2,16 +2,20 @@ package ru.yandex.practicum.filmorate.storage.feed;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.enumerations.EventType;
 import ru.yandex.practicum.filmorate.model.enumerations.Operation;
 
+import javax.annotation.PostConstruct;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -19,38 +23,85 @@ import java.util.Objects;
 @RequiredArgsConstructor
 public class DBEventStorage implements EventStorage {
     private final JdbcTemplate jdbcTemplate;
-    private static final String SQL_CREATE = "INSERT INTO feed (user_id, entity_id, event_type_id, operation_id) "
-            + "VALUES (?, ?, (SELECT event_type_id FROM event_types WHERE name = ?), "
-            + "(SELECT operation_id FROM operations WHERE name = ?));";
-    private static final String SQL_GET_ALL_BY_USER = "SELECT \n" +
-            "f.event_id, f.user_id, f.timestamp, f.entity_id, e.name event_type_name, o.name operation_name\n" +
-            "FROM feed f\n" +
-            "JOIN event_types e ON e.event_type_id = f.event_type_id\n" +
-            "JOIN operations o ON o.operation_id = f.operation_id\n" +
-            "WHERE f.user_id = ?" +
-            "ORDER BY f.event_id asc";
+    // события удалённого к моменту записи пользователя и уже записанные при прошлой попытке события
+    // пропускаются, а не роняют весь пакет
+    private static final String SQL_CREATE_IF_USER_EXISTS = "INSERT INTO feed "
+            + "(event_id, timestamp, user_id, entity_id, event_type_id, operation_id) "
+            + "SELECT ?, ?, user_id, ?, ?, ? FROM users WHERE user_id = ? "
+            + "AND NOT EXISTS (SELECT 1 FROM feed WHERE event_id = ?);";
+    private static final String SQL_NEXT_EVENT_IDS = "SELECT NEXT VALUE FOR feed_event_id_seq "
+            + "FROM SYSTEM_RANGE(1, ?);";
+    // справочники event_types и operations не джойнятся: их id зафиксированы в EventType и Operation,
+    // поэтому страница читается только по индексу feed (user_id, event_id)
+    private static final String SQL_GET_PAGE_BY_USER = "SELECT event_id, user_id, timestamp, entity_id, "
+            + "event_type_id, operation_id FROM feed WHERE user_id = ? AND event_id > ? ORDER BY event_id LIMIT ?";
 
     @Override
-    public Event create(Event event) {
-        KeyHolder keyHolder = new GeneratedKeyHolder();
+    @Transactional
+    public int createAll(List<Event> events) {
+        int[][] updateCounts = jdbcTemplate.batchUpdate(SQL_CREATE_IF_USER_EXISTS,
+                events,
+                events.size(),
+                (PreparedStatement ps, Event event) -> {
+                    ps.setInt(1, event.getEventId());
+                    ps.setTimestamp(2, new Timestamp(event.getTimestamp()));
+                    ps.setInt(3, event.getEntityId());
+                    ps.setInt(4, event.getEventType().getId());
+                    ps.setInt(5, event.getOperation().getId());
+                    ps.setInt(6, event.getUserId());
+                    ps.setInt(7, event.getEventId());
+                });
 
-        jdbcTemplate.update(con -> {
-            PreparedStatement ps = con.prepareStatement(SQL_CREATE, new String[]{"event_id"});
-            ps.setInt(1, event.getUserId());
-            ps.setInt(2, event.getEntityId());
-            ps.setString(3, event.getEventType().toString());
-            ps.setString(4, event.getOperation().toString());
-            return ps;
-        }, keyHolder);
+        int created = 0;
+        for (int[] batchCounts : updateCounts) {
+            for (int count : batchCounts) {
+                created += count;
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public List<Event> getByUserId(int userId, int afterEventId, int limit) {
+        return jdbcTemplate.query(SQL_GET_PAGE_BY_USER, this::mapToRow, userId, afterEventId, limit);
+    }
 
-        event.setEventId(Objects.requireNonNull(keyHolder.getKey()).intValue());
+    @Override
+    public List<Event> getLastByUserIds(Collection<Integer> userIds, int limit) {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String inSql = String.join(",", Collections.nCopies(userIds.size(), "?"));
+        String sqlQuery = String.format("SELECT event_id, user_id, timestamp, entity_id, event_type_id, operation_id "
+                + "FROM feed WHERE user_id IN (%s) ORDER BY event_id DESC LIMIT ?;", inSql);
+
+        List<Object> params = new ArrayList<>(userIds);
+        params.add(limit);
+        List<Event> events = jdbcTemplate.query(sqlQuery, this::mapToRow, params.toArray());
+        Collections.reverse(events);
+        return events;
+    }
 
-        return event;
+    // в базах, где event_id раньше присваивал identity-столбец, последовательность начинается с 1
+    // и сдвигается за уже записанные события
+    @PostConstruct
+    public void syncEventIdSequence() {
+        int lastEventId = Objects.requireNonNull(jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(event_id), 0) FROM feed;", Integer.class));
+        long nextValue = Objects.requireNonNull(jdbcTemplate.queryForObject("SELECT BASE_VALUE "
+                + "FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'FEED_EVENT_ID_SEQ';", Long.class));
+        if (nextValue <= lastEventId) {
+            jdbcTemplate.execute("ALTER SEQUENCE feed_event_id_seq RESTART WITH " + (lastEventId + 1) + ";");
+        }
     }
 
     @Override
-    public List<Event> getAllByUserId(int userId) {
-        return jdbcTemplate.query(SQL_GET_ALL_BY_USER, this::mapToRow, userId);
+    public int[] nextEventIds(int count) {
+        return jdbcTemplate.queryForList(SQL_NEXT_EVENT_IDS, Integer.class, count).stream()
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .toArray();
     }
 
     private Event mapToRow(ResultSet resultSet, int rowNum) throws SQLException {
@@ -58,8 +109,8 @@ public class DBEventStorage implements EventStorage {
                 .eventId(resultSet.getInt("event_id"))
                 .userId(resultSet.getInt("user_id"))
                 .timestamp(resultSet.getTimestamp("timestamp").getTime())
-                .eventType(EventType.valueOf(resultSet.getString("event_type_name")))
-                .operation(Operation.valueOf(resultSet.getString("operation_name")))
+                .eventType(EventType.fromId(resultSet.getInt("event_type_id")))
+                .operation(Operation.fromId(resultSet.getInt("operation_id")))
                 .entityId(resultSet.getInt("entity_id"))
                 .build();
     }
@@ -2,10 +2,20 @@ package ru.yandex.practicum.filmorate.storage.feed;
 
 import ru.yandex.practicum.filmorate.model.Event;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface EventStorage {
-    Event create(Event feed);
+    // пакетная вставка с уже присвоенными eventId и timestamp.
+    // События несуществующих пользователей пропускаются, возвращается количество записанных событий
+    int createAll(List<Event> events);
 
-    List<Event> getAllByUserId(int userId);
+    // не больше limit событий пользователя с event_id больше afterEventId по возрастанию event_id
+    List<Event> getByUserId(int userId, int afterEventId, int limit);
+
+    // последние limit событий указанных пользователей по возрастанию event_id
+    List<Event> getLastByUserIds(Collection<Integer> userIds, int limit);
+
+    // count следующих значений последовательности feed_event_id_seq по возрастанию
+    int[] nextEventIds(int count);
 }
\ No newline at end of file
@@ -5,18 +5,23 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.exceptions.AddExistObjectException;
 import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Component("dBFilmStorage")
 public class DBFilmStorage implements FilmStorage {
+    // сколько строк драйвер получает за раз при потоковом чтении
+    private static final int STREAM_FETCH_SIZE = 500;
 
     private final JdbcTemplate jdbcTemplate;
 
@@ -38,6 +43,34 @@ public class DBFilmStorage implements FilmStorage {
         return films;
     }
 
+    @Override
+    public void forEachFilm(Consumer<Film> action) {
+        String sqlQuery = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name mpa_name " +
+                "FROM films f " +
+                "JOIN mpa m ON m.mpa_id = f.mpa_id " +
+                "ORDER BY f.film_id;";
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlQuery);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, resultSet -> {
+            action.accept(createFilm(resultSet, resultSet.getRow()));
+        });
+    }
+
+    @Override
+    public List<Film> getFilmsPage(int afterId, int limit) {
+        String sqlQuery = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name mpa_name " +
+                "FROM films f " +
+                "JOIN mpa m ON m.mpa_id = f.mpa_id " +
+                "WHERE f.film_id > ? " +
+                "ORDER BY f.film_id " +
+                "LIMIT ?;";
+
+        return jdbcTemplate.query(sqlQuery, DBFilmStorage::createFilm, afterId, limit);
+    }
+
     @Override
     public Film getFilm(int filmId) {
         return checkContainsFilm(filmId);
@@ -54,7 +87,9 @@ public class DBFilmStorage implements FilmStorage {
 
     @Override
     public Film addFilm(Film film) {
-        checkNonContainsFilm(film.getId());
+        if (film.getId() != 0) {
+            checkNonContainsFilm(film.getId());
+        }
 
         fillingOptionalParameters(film);
         String sqlQuery = "INSERT INTO films (name, description, release_date, duration, mpa_id)" +
@@ -77,15 +112,45 @@ public class DBFilmStorage implements FilmStorage {
     }
 
     @Override
-    public Film updateFilm(Film film) {
-        checkContainsFilm(film.getId());
+    public List<Film> addFilms(List<Film> films) {
+        String sqlQuery = "INSERT INTO films (name, description, release_date, duration, mpa_id, likes_count) " +
+                "VALUES (?, ?, ?, ?, ?, ?);";
+
+        jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"film_id"})) {
+                for (Film film : films) {
+                    fillingOptionalParameters(film);
+                    stmt.setString(1, film.getName());
+                    stmt.setString(2, film.getDescription());
+                    stmt.setDate(3, java.sql.Date.valueOf((film.getReleaseDate())));
+                    stmt.setInt(4, film.getDuration());
+                    stmt.setInt(5, film.getMpa().getId());
+                    stmt.setInt(6, film.getUserLikes().size());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        keys.next();
+                        film.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return films;
+        });
+
+        return films;
+    }
 
+    @Override
+    public Film updateFilm(Film film) {
         fillingOptionalParameters(film);
         String sqlQuery = "UPDATE films " +
                 "SET name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ? " +
                 "WHERE film_id = ?;";
 
-        jdbcTemplate.update(sqlQuery,
+        int updated = jdbcTemplate.update(sqlQuery,
                 film.getName(),
                 film.getDescription(),
                 film.getReleaseDate(),
@@ -93,110 +158,24 @@ public class DBFilmStorage implements FilmStorage {
                 film.getMpa().getId(),
                 film.getId());
 
+        if (updated == 0) {
+            throw nonExistFilm(film.getId());
+        }
+
         return film;
     }
 
     @Override
+    @Transactional
     public Film deleteFilm(int filmId) {
         Film film = checkContainsFilm(filmId);
-        String sqlQuery = "DELETE FROM films WHERE film_id = ?";
-        String sqlLikes = "DELETE FROM LIKES WHERE film_id = ?;";
-        String sqlReviews = "DELETE FROM reviews WHERE film_id = ?;";
-        String sqlFilmDirectors = "DELETE FROM FILM_DIRECTORS WHERE film_id = ?;";
-        String sqlFilmGenres = "DELETE FROM film_genres WHERE film_id = ?;";
-
-        jdbcTemplate.update(sqlLikes, filmId);
-        jdbcTemplate.update(sqlReviews, filmId);
-        jdbcTemplate.update(sqlFilmDirectors, filmId);
-        jdbcTemplate.update(sqlFilmGenres, filmId);
+        // лайки, жанры, режиссёры и отзывы фильма вместе с оценками отзывов удаляются каскадно
+        String sqlQuery = "DELETE FROM films WHERE film_id = ?;";
         jdbcTemplate.update(sqlQuery, filmId);
 
         return film;
     }
 
-    @Override
-    public List<Film> getMostLikedFilmsByGenreAndYear(int count, int genreID, int year) {
-        String sqlYear = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name mpa_name " +
-                "FROM films f " +
-                "JOIN mpa m ON m.mpa_id = f.mpa_id " +
-                "LEFT JOIN likes l on f.film_id = l.film_id " +
-                "WHERE Extract(year from cast(f.release_date as date)) = ?" +
-                "GROUP BY f.film_id " +
-                "ORDER BY count(l.user_id) desc " +
-                "limit ?;";
-        String sqlGenre = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name mpa_name " +
-                "FROM films f " +
-                "JOIN mpa m ON m.mpa_id = f.mpa_id " +
-                "LEFT JOIN likes l on f.film_id = l.film_id " +
-                "JOIN film_genres fg on f.film_id = fg.film_id " +
-                "WHERE fg.genre_id = ?" +
-                "GROUP BY f.film_id " +
-                "ORDER BY count(l.user_id) desc " +
-                "limit ?;";
-        String sqlYearAndGenre = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name mpa_name " +
-                "FROM films f " +
-                "LEFT JOIN likes l on f.film_id = l.film_id " +
-                "JOIN mpa m ON m.mpa_id = f.mpa_id " +
-                "JOIN film_genres fg on f.film_id = fg.film_id " +
-                "WHERE fg.genre_id = ? and Extract(year from cast(f.release_date as date)) = ?" +
-                "GROUP BY f.film_id " +
-                "ORDER BY count(l.user_id) desc " +
-                "limit ?;";
-
-        if (genreID != 0 && year != 0) {
-            return jdbcTemplate.query(sqlYearAndGenre, DBFilmStorage::createFilm, genreID, year, count);
-        }
-        if (genreID == 0) {
-            return jdbcTemplate.query(sqlYear, DBFilmStorage::createFilm, year, count);
-        }
-        if (year == 0) {
-            return jdbcTemplate.query(sqlGenre, DBFilmStorage::createFilm, genreID, count);
-        }
-        return Collections.emptyList();
-    }
-
-    @Override
-    public List<Film> searchFilm(String query, boolean directors, boolean title) {
-        String sqlDirectorsTittle = "SELECT f.film_id, f.name, f.description, f.release_date, m.name mpa_name, " +
-                "f.duration, f.mpa_id, COUNT(l.user_id) AS likes_count \n" +
-                "FROM films AS f " +
-                "JOIN mpa m ON m.mpa_id = f.mpa_id " +
-                "LEFT JOIN film_directors AS fd ON f.film_id = fd.film_id " +
-                "LEFT JOIN directors AS d ON fd.director_id = d.director_id " +
-                "LEFT JOIN likes AS l ON f.film_id = l.film_id " +
-                "WHERE UPPER(f.name) LIKE UPPER('%" + query + "%') OR UPPER(d.name) LIKE UPPER('%" + query + "%') " +
-                "GROUP BY f.film_id " +
-                "ORDER BY likes_count DESC";
-        String sqlTittle = "SELECT f.film_id, f.name, f.description, f.release_date, m.name mpa_name, " +
-                "f.duration, f.mpa_id, COUNT(l.user_id) AS likes_count \n" +
-                "FROM films AS f " +
-                "JOIN mpa m ON m.mpa_id = f.mpa_id " +
-                "LEFT JOIN likes AS l ON f.film_id = l.film_id " +
-                "WHERE UPPER(f.name) LIKE UPPER('%" + query + "%') " +
-                "GROUP BY f.film_id " +
-                "ORDER BY likes_count DESC";
-        String sqlDirectors = "SELECT f.film_id, f.name, f.description, f.release_date, m.name mpa_name, " +
-                "f.duration, f.mpa_id, COUNT(l.user_id) AS likes_count \n" +
-                "FROM films AS f " +
-                "JOIN mpa m ON m.mpa_id = f.mpa_id " +
-                "LEFT JOIN film_directors AS fd ON f.film_id = fd.film_id " +
-                "LEFT JOIN directors AS d ON fd.director_id = d.director_id " +
-                "LEFT JOIN likes AS l ON f.film_id = l.film_id " +
-                "WHERE UPPER(d.name) LIKE UPPER('%" + query + "%') " +
-                "GROUP BY f.film_id " +
-                "ORDER BY likes_count DESC";
-        if (directors && title) {
-            return jdbcTemplate.query(sqlDirectorsTittle, DBFilmStorage::createFilm);
-        }
-        if (directors) {
-            return jdbcTemplate.query(sqlDirectors, DBFilmStorage::createFilm);
-        }
-        if (title) {
-            return jdbcTemplate.query(sqlTittle, DBFilmStorage::createFilm);
-        }
-        return Collections.emptyList();
-    }
-
     @Override
     public List<Film> getCommonFriendFilms(int userId, int friendId) {
         String sqlQuery = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name mpa_name " +
@@ -204,7 +183,8 @@ public class DBFilmStorage implements FilmStorage {
                 "JOIN mpa AS m ON m.mpa_id = f.mpa_id " +
                 "JOIN likes AS l ON f.film_id = l.film_id " +
                 "JOIN likes AS lf ON l.film_id = lf.film_id " +
-                "WHERE l.user_id = ? and lf.user_id = ?";
+                "WHERE l.user_id = ? and lf.user_id = ? " +
+                "ORDER BY f.likes_count DESC";
 
         return jdbcTemplate.query(sqlQuery, DBFilmStorage::createFilm, userId, friendId);
     }
@@ -249,10 +229,14 @@ public class DBFilmStorage implements FilmStorage {
         List<Film> film = jdbcTemplate.query(sqlQuery, DBFilmStorage::createFilm, filmId);
 
         if (film.size() != 1) {
-            throw new UpdateNonExistObjectException("Film с указанным id = " + filmId + " не существует " +
-                    "или имеется больше 1");
+            throw nonExistFilm(filmId);
         }
 
         return film.get(0);
     }
+
+    private static UpdateNonExistObjectException nonExistFilm(int filmId) {
+        return new UpdateNonExistObjectException("Film с указанным id = " + filmId + " не существует " +
+                "или имеется больше 1");
+    }
 }
@@ -4,24 +4,30 @@ import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Map<Integer, Film> getAllFilms();
 
+    // передаёт фильмы без жанров, режиссёров и лайков по одному по возрастанию id, не загружая их все в память
+    void forEachFilm(Consumer<Film> action);
+
+    // не больше limit фильмов с id больше afterId по возрастанию id
+    List<Film> getFilmsPage(int afterId, int limit);
+
     Film getFilm(int filmId);
 
     List<Film> getFilm(List<Integer> filmIds);
 
     Film addFilm(Film film);
 
+    // добавляет фильмы одним пакетом, id фильмов назначает база, likes_count сразу равен числу лайков
+    List<Film> addFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
     Film deleteFilm(int filmId);
 
-    List<Film> getMostLikedFilmsByGenreAndYear(int count, int genreID, int year);
-
-    List<Film> searchFilm(String query, boolean directors, boolean tittle);
-
     List<Film> getCommonFriendFilms(int userId, int friendId);
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.storage.genre;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.DBFilmGenreStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш жанров перед {@link DBGenreStorage}. Жанры - справочник из data.sql, поэтому загружаются целиком
+ * при запуске, а жанр, которого нет в кэше, читается из базы и добавляется в кэш.
+ * Жанры фильмов собираются по id из film_genres без соединения с таблицей genres.
+ * Объекты из кэша общие для всех фильмов и не должны изменяться.
+ */
+@Primary
+@Component("cachedGenreStorage")
+public class CachedGenreStorage implements GenreStorage, MetricsSource {
+    private final GenreStorage genreStorage;
+    private final DBFilmGenreStorage filmGenreStorage;
+
+    private final Map<Integer, Genre> genres = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public CachedGenreStorage(@Qualifier("dBGenreStorage") GenreStorage genreStorage,
+                              DBFilmGenreStorage filmGenreStorage) {
+        this.genreStorage = genreStorage;
+        this.filmGenreStorage = filmGenreStorage;
+    }
+
+    @PostConstruct
+    public void preload() {
+        genres.clear();
+        genres.putAll(genreStorage.getAllGenres());
+    }
+
+    @Override
+    public Map<Integer, Genre> getAllGenres() {
+        hits.incrementAndGet();
+        return new HashMap<>(genres);
+    }
+
+    @Override
+    public Genre getGenre(int genreId) {
+        Genre genre = genres.get(genreId);
+        if (genre != null) {
+            hits.incrementAndGet();
+            return genre;
+        }
+
+        misses.incrementAndGet();
+        genre = genreStorage.getGenre(genreId);
+        genres.put(genreId, genre);
+        return genre;
+    }
+
+    @Override
+    public Map<Integer, Set<Genre>> getGenreByFilm(List<Film> films) {
+        Map<Integer, Set<Genre>> result = new HashMap<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : filmGenreStorage.getFilmGenreIds(films).entrySet()) {
+            Set<Genre> filmGenres = new LinkedHashSet<>();
+            for (int genreId : entry.getValue()) {
+                filmGenres.add(getGenre(genreId));
+            }
+            result.put(entry.getKey(), filmGenres);
+        }
+        return result;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "genreCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", genres.size());
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        return metrics;
+    }
+}
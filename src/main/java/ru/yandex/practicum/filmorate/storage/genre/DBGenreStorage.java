@@ -4,13 +4,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 @Component("dBGenreStorage")
 public class DBGenreStorage implements GenreStorage {
@@ -40,6 +39,29 @@ public class DBGenreStorage implements GenreStorage {
         return checkContainsGenre(genreID);
     }
 
+    @Override
+    public Map<Integer, Set<Genre>> getGenreByFilm(List<Film> films) {
+        Map<Integer, Set<Genre>> result = new HashMap<>();
+        for (Film film : films) {
+            result.put(film.getId(), new LinkedHashSet<>());
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+
+        String inSql = String.join(",", Collections.nCopies(result.size(), "?"));
+        String sqlQuery = String.format("SELECT fg.film_id, g.genre_id, g.name FROM film_genres AS fg " +
+                "JOIN genres AS g ON fg.genre_id = g.genre_id " +
+                "WHERE fg.film_id IN (%s) " +
+                "ORDER BY g.genre_id;", inSql);
+
+        jdbcTemplate.query(sqlQuery, result.keySet().toArray(), (ResultSet rs) -> {
+            result.get(rs.getInt("film_id")).add(createGenre(rs, 0));
+        });
+
+        return result;
+    }
+
     public static Genre createGenre(ResultSet resultSet, int rowNum) throws SQLException {
         Genre genre = new Genre();
         genre.setId(resultSet.getInt("genre_id"));
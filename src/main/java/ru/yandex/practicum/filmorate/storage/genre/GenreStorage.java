@@ -1,11 +1,16 @@
 package ru.yandex.practicum.filmorate.storage.genre;
 
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface GenreStorage {
     Map<Integer, Genre> getAllGenres();
 
     Genre getGenre(int genreId);
+
+    Map<Integer, Set<Genre>> getGenreByFilm(List<Film> films);
 }
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.storage.mpa;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш рейтингов MPA перед {@link DBMpaStorage}. Рейтинги - справочник из data.sql, поэтому загружаются
+ * целиком при запуске, а рейтинг, которого нет в кэше, читается из базы и добавляется в кэш.
+ */
+@Primary
+@Component("cachedMpaStorage")
+public class CachedMpaStorage implements MpaStorage, MetricsSource {
+    private final MpaStorage mpaStorage;
+
+    private final Map<Integer, Mpa> mpa = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public CachedMpaStorage(@Qualifier("dBMpaStorage") MpaStorage mpaStorage) {
+        this.mpaStorage = mpaStorage;
+    }
+
+    @PostConstruct
+    public void preload() {
+        mpa.clear();
+        mpa.putAll(mpaStorage.getAllMpa());
+    }
+
+    @Override
+    public Map<Integer, Mpa> getAllMpa() {
+        hits.incrementAndGet();
+        return new HashMap<>(mpa);
+    }
+
+    @Override
+    public Mpa getMpa(int mpaId) {
+        Mpa item = mpa.get(mpaId);
+        if (item != null) {
+            hits.incrementAndGet();
+            return item;
+        }
+
+        misses.incrementAndGet();
+        item = mpaStorage.getMpa(mpaId);
+        mpa.put(mpaId, item);
+        return item;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "mpaCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", mpa.size());
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        return metrics;
+    }
+}
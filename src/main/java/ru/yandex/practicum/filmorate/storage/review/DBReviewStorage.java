@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.review;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -53,21 +54,27 @@ public class DBReviewStorage implements ReviewStorage {
 
     @Override
     public Review addReview(Review review) {
-        checkNonContainsReview(review.getReviewId());
-        checkAddDuplicateReview(review);
+        if (review.getReviewId() != 0) {
+            checkNonContainsReview(review.getReviewId());
+        }
 
         String sqlQuery = "INSERT INTO reviews (content, is_positive, user_id, film_id) " +
                 "VALUES (?, ?, ?, ?);";
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
-            PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"review_id"});
-            stmt.setString(1, review.getContent());
-            stmt.setBoolean(2, review.getIsPositive());
-            stmt.setInt(3, review.getUserId());
-            stmt.setInt(4, review.getFilmId());
-            return stmt;
-        }, keyHolder);
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"review_id"});
+                stmt.setString(1, review.getContent());
+                stmt.setBoolean(2, review.getIsPositive());
+                stmt.setInt(3, review.getUserId());
+                stmt.setInt(4, review.getFilmId());
+                return stmt;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            throw new AddExistObjectException("Review для указанного фильма и пользователя уже существует " +
+                    "filmId = " + review.getFilmId() + ", userId = " + review.getUserId());
+        }
 
         review.setReviewId((int) Objects.requireNonNull(keyHolder.getKey()));
 
@@ -76,17 +83,20 @@ public class DBReviewStorage implements ReviewStorage {
 
     @Override
     public Review updateReview(Review review) {
-        checkContainsReview(review.getReviewId());
-
         String sqlQuery = "UPDATE reviews " +
                 "SET content = ?, is_positive = ? " +
                 "WHERE review_id = ?;";
 
-        jdbcTemplate.update(sqlQuery,
+        int updated = jdbcTemplate.update(sqlQuery,
                 review.getContent(),
                 review.getIsPositive(),
                 review.getReviewId());
 
+        if (updated == 0) {
+            throw nonExistReview(review.getReviewId());
+        }
+
+        // полезность и автор отзыва возвращаются из базы
         return getReview(review.getReviewId());
     }
 
@@ -109,10 +119,9 @@ public class DBReviewStorage implements ReviewStorage {
     }
 
     private void checkNonContainsReview(int reviewId) {
-        String sqlQuery = "SELECT * FROM reviews WHERE review_id = ?;";
-        List<Review> review = jdbcTemplate.query(sqlQuery, DBReviewStorage::createReview, reviewId);
+        String sqlQuery = "SELECT EXISTS (SELECT 1 FROM reviews WHERE review_id = ?);";
 
-        if (review.size() > 0) {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, reviewId))) {
             throw new AddExistObjectException("Review с указанным id = " + reviewId + " уже существует");
         }
     }
@@ -127,21 +136,14 @@ public class DBReviewStorage implements ReviewStorage {
         List<Review> review = jdbcTemplate.query(sqlQuery, DBReviewStorage::createReview, reviewId);
 
         if (review.size() != 1) {
-            throw new UpdateNonExistObjectException("Review с указанным id = " + reviewId + " не существует " +
-                    "или имеется больше 1");
+            throw nonExistReview(reviewId);
         }
 
         return review.get(0);
     }
 
-    private void checkAddDuplicateReview(Review review) {
-        String sqlQuery = "SELECT * FROM reviews WHERE user_id = ? AND film_id = ?;";
-        List<Review> result = jdbcTemplate.query(sqlQuery, DBReviewStorage::createReview,
-                review.getUserId(), review.getFilmId());
-
-        if (result.size() != 0) {
-            throw new AddExistObjectException("Review для указанного фильма и пользователя уже существует " +
-                    "filmId = " + review.getFilmId() + ", userId = " + review.getUserId());
-        }
+    private static UpdateNonExistObjectException nonExistReview(int reviewId) {
+        return new UpdateNonExistObjectException("Review с указанным id = " + reviewId + " не существует " +
+                "или имеется больше 1");
     }
 }
@@ -0,0 +1,288 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.MetricsSource;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш пользователей перед {@link DBUserStorage}.
+ * Id всех пользователей хранятся в битовой карте, которая заполняется при запуске и обновляется
+ * при добавлении и удалении пользователей, поэтому проверка существования обходится без запроса.
+ * Если id в карте нет, проверка повторяется запросом к базе на случай пользователей, добавленных в обход кэша.
+ * Сами пользователи хранятся в кэше на max-size записей с вытеснением дольше всех не читавшихся
+ * и копируются при записи и чтении, так как вызывающий код изменяет полученных пользователей.
+ */
+@Primary
+@Component("cachedUserStorage")
+public class CachedUserStorage implements UserStorage, MetricsSource {
+    private final UserStorage userStorage;
+    private final int maxSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final BitSet userIds = new BitSet();
+    private final LinkedHashMap<Integer, User> users = new LinkedHashMap<>(16, 0.75f, true);
+    private long version;
+
+    private final AtomicLong existsChecks = new AtomicLong();
+    private final AtomicLong existsQueries = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public CachedUserStorage(@Qualifier("dBUserStorage") UserStorage userStorage,
+                             @Value("${filmorate.users.cache.max-size:10000}") int maxSize) {
+        this.userStorage = userStorage;
+        this.maxSize = maxSize;
+    }
+
+    @PostConstruct
+    public void preload() {
+        List<Integer> ids = userStorage.getUserIds();
+        lock.lock();
+        try {
+            userIds.clear();
+            users.clear();
+            for (int userId : ids) {
+                userIds.set(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, User> getAllUsers() {
+        return userStorage.getAllUsers();
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        userStorage.forEachUser(action);
+    }
+
+    @Override
+    public List<User> getUsersPage(int afterId, int limit) {
+        return userStorage.getUsersPage(afterId, limit);
+    }
+
+    @Override
+    public User getUser(int userId) {
+        long stamp;
+        lock.lock();
+        try {
+            User user = users.get(userId);
+            if (user != null) {
+                hits.incrementAndGet();
+                return copy(user);
+            }
+            stamp = version;
+        } finally {
+            lock.unlock();
+        }
+
+        misses.incrementAndGet();
+        User user = userStorage.getUser(userId);
+        cache(user, stamp);
+        return user;
+    }
+
+    @Override
+    public boolean existsUser(int userId) {
+        existsChecks.incrementAndGet();
+        long stamp;
+        lock.lock();
+        try {
+            if (containsId(userId)) {
+                return true;
+            }
+            stamp = version;
+        } finally {
+            lock.unlock();
+        }
+
+        existsQueries.incrementAndGet();
+        boolean exists = userStorage.existsUser(userId);
+        if (exists) {
+            cacheId(userId, stamp);
+        }
+        return exists;
+    }
+
+    @Override
+    public void checkExistsUser(int userId) {
+        existsChecks.incrementAndGet();
+        long stamp;
+        lock.lock();
+        try {
+            if (containsId(userId)) {
+                return;
+            }
+            stamp = version;
+        } finally {
+            lock.unlock();
+        }
+
+        existsQueries.incrementAndGet();
+        userStorage.checkExistsUser(userId);
+        cacheId(userId, stamp);
+    }
+
+    @Override
+    public List<Integer> getUserIds() {
+        lock.lock();
+        try {
+            return userIds.stream().boxed().collect(Collectors.toList());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<User> getUsers(Collection<Integer> ids) {
+        return userStorage.getUsers(ids);
+    }
+
+    @Override
+    public User addUser(User user) {
+        userStorage.addUser(user);
+        setId(user.getId());
+        return user;
+    }
+
+    @Override
+    public List<User> addUsers(List<User> users) {
+        userStorage.addUsers(users);
+        lock.lock();
+        try {
+            for (User user : users) {
+                userIds.set(user.getId());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return users;
+    }
+
+    @Override
+    public User updateUser(User user) {
+        userStorage.updateUser(user);
+        lock.lock();
+        try {
+            ++version;
+            users.remove(user.getId());
+        } finally {
+            lock.unlock();
+        }
+        return user;
+    }
+
+    @Override
+    public User deleteUser(int userId) {
+        User user = userStorage.deleteUser(userId);
+        lock.lock();
+        try {
+            ++version;
+            userIds.clear(userId);
+            users.remove(userId);
+        } finally {
+            lock.unlock();
+        }
+        return user;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "userCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            metrics.put("users", userIds.cardinality());
+            metrics.put("size", users.size());
+            // примерно: биты карты и записи кэша с объектами пользователей
+            metrics.put("memoryBytes", userIds.size() / 8 + users.size() * 256L);
+        } finally {
+            lock.unlock();
+        }
+
+        long requests = hits.get() + misses.get();
+        metrics.put("maxSize", maxSize);
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("hitRate", requests == 0 ? 0.0 : (double) hits.get() / requests);
+        metrics.put("existsChecks", existsChecks.get());
+        // каждая проверка существования без запроса к базе - сэкономленный SELECT по users
+        metrics.put("existsQueries", existsQueries.get());
+        metrics.put("queriesSaved", existsChecks.get() - existsQueries.get() + hits.get());
+        return metrics;
+    }
+
+    private boolean containsId(int userId) {
+        return userId >= 0 && userIds.get(userId);
+    }
+
+    private void setId(int userId) {
+        lock.lock();
+        try {
+            userIds.set(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // id, найденный запросом до удаления какого-либо пользователя, в карту не попадает,
+    // иначе удалённый за время запроса пользователь снова считался бы существующим
+    private void cacheId(int userId, long stamp) {
+        lock.lock();
+        try {
+            if (stamp == version) {
+                userIds.set(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // пользователь, загруженный до изменения или удаления какого-либо пользователя, в кэш не попадает
+    private void cache(User user, long stamp) {
+        lock.lock();
+        try {
+            if (stamp != version) {
+                return;
+            }
+            users.put(user.getId(), copy(user));
+            Iterator<Integer> iterator = users.keySet().iterator();
+            while (users.size() > maxSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static User copy(User user) {
+        User result = new User();
+        result.setId(user.getId());
+        result.setEmail(user.getEmail());
+        result.setLogin(user.getLogin());
+        result.setName(user.getName());
+        result.setBirthday(user.getBirthday());
+        result.setFriends(user.getFriends() == null ? null : new HashSet<>(user.getFriends()));
+        return result;
+    }
+}
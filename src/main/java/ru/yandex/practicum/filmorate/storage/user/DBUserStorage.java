@@ -1,21 +1,27 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.exceptions.AddExistObjectException;
 import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Component("dBUserStorage")
 public class DBUserStorage implements UserStorage {
+    // сколько строк драйвер получает за раз при потоковом чтении
+    private static final int STREAM_FETCH_SIZE = 500;
 
     private final JdbcTemplate jdbcTemplate;
 
@@ -37,29 +43,84 @@ public class DBUserStorage implements UserStorage {
         return users;
     }
 
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        String sqlQuery = "SELECT * FROM users ORDER BY user_id;";
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlQuery);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, resultSet -> {
+            action.accept(createUser(resultSet, resultSet.getRow()));
+        });
+    }
+
+    @Override
+    public List<User> getUsersPage(int afterId, int limit) {
+        String sqlQuery = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?;";
+        return jdbcTemplate.query(sqlQuery, DBUserStorage::createUser, afterId, limit);
+    }
+
     @Override
     public User getUser(int userId) {
         return checkContainsUser(userId);
     }
 
+    @Override
+    public boolean existsUser(int userId) {
+        String sqlQuery = "SELECT EXISTS (SELECT 1 FROM users WHERE user_id = ?);";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, userId));
+    }
+
+    @Override
+    public void checkExistsUser(int userId) {
+        if (!existsUser(userId)) {
+            throw nonExistUser(userId);
+        }
+    }
+
+    @Override
+    public List<Integer> getUserIds() {
+        String sqlQuery = "SELECT user_id FROM users;";
+        return jdbcTemplate.queryForList(sqlQuery, Integer.class);
+    }
+
+    @Override
+    public List<User> getUsers(Collection<Integer> userIds) {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String inSql = String.join(",", Collections.nCopies(userIds.size(), "?"));
+        String sqlQuery = String.format("SELECT * FROM users WHERE user_id IN (%s) ORDER BY user_id;", inSql);
+
+        return jdbcTemplate.query(sqlQuery, DBUserStorage::createUser, userIds.toArray());
+    }
+
     @Override
     public User addUser(User user) {
-        checkNonContainsUser(user.getId());
-        checkAddDuplicateUser(user);
+        if (user.getId() != 0) {
+            checkNonContainsUser(user.getId());
+        }
 
         fillingOptionalParameters(user);
         String sqlQuery = "INSERT INTO users (email, login, name, birthday)" +
                 "VALUES (?, ?, ?, ?);";
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
-            PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"user_id"});
-            stmt.setString(1, user.getEmail());
-            stmt.setString(2, user.getLogin());
-            stmt.setString(3, user.getName());
-            stmt.setDate(4, java.sql.Date.valueOf((user.getBirthday())));
-            return stmt;
-        }, keyHolder);
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"user_id"});
+                stmt.setString(1, user.getEmail());
+                stmt.setString(2, user.getLogin());
+                stmt.setString(3, user.getName());
+                stmt.setDate(4, java.sql.Date.valueOf((user.getBirthday())));
+                return stmt;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            throw duplicateUser(user);
+        }
 
         user.setId((int) Objects.requireNonNull(keyHolder.getKey()));
 
@@ -67,40 +128,72 @@ public class DBUserStorage implements UserStorage {
     }
 
     @Override
-    public User updateUser(User user) {
-        checkContainsUser(user.getId());
+    public List<User> addUsers(List<User> users) {
+        String sqlQuery = "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?);";
+
+        jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"user_id"})) {
+                for (User user : users) {
+                    fillingOptionalParameters(user);
+                    stmt.setString(1, user.getEmail());
+                    stmt.setString(2, user.getLogin());
+                    stmt.setString(3, user.getName());
+                    stmt.setDate(4, java.sql.Date.valueOf((user.getBirthday())));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (User user : users) {
+                        keys.next();
+                        user.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return users;
+        });
+
+        return users;
+    }
 
+    @Override
+    public User updateUser(User user) {
         fillingOptionalParameters(user);
         String sqlQuery = "UPDATE users " +
                 "SET email = ?, login = ?, name = ?, birthday = ? " +
                 "WHERE user_id = ?;";
 
-        jdbcTemplate.update(sqlQuery,
-                user.getEmail(),
-                user.getLogin(),
-                user.getName(),
-                user.getBirthday(),
-                user.getId());
+        int updated;
+        try {
+            updated = jdbcTemplate.update(sqlQuery,
+                    user.getEmail(),
+                    user.getLogin(),
+                    user.getName(),
+                    user.getBirthday(),
+                    user.getId());
+        } catch (DuplicateKeyException e) {
+            throw duplicateUser(user);
+        }
+
+        if (updated == 0) {
+            throw nonExistUser(user.getId());
+        }
 
         return user;
     }
 
     @Override
+    @Transactional
     public User deleteUser(int userId) {
         User user = checkContainsUser(userId);
         user.setFriends(new HashSet<>(jdbcTemplate.query("SELECT friend_id FROM friends WHERE user_id = ?;",
                 (resultSet, rowNum) -> resultSet.getInt("friend_id"),
                 userId)));
 
-        String sqlQuery = "DELETE FROM friends WHERE user_id = ? OR friend_id = ?;";
-        jdbcTemplate.update(sqlQuery, userId, userId);
-        sqlQuery = "DELETE FROM feed WHERE user_id = ?;";
-        jdbcTemplate.update(sqlQuery, userId);
-        sqlQuery = "DELETE FROM likes WHERE user_id = ?;";
-        jdbcTemplate.update(sqlQuery, userId);
-        sqlQuery = "DELETE FROM review_user_likes WHERE user_id = ?;";
-        jdbcTemplate.update(sqlQuery, userId);
-        sqlQuery = "DELETE FROM reviews WHERE user_id = ?;";
+        // счётчики лайков уменьшаются до удаления, затем друзья, лента, лайки, отзывы
+        // и оценки отзывов пользователя удаляются каскадно
+        String sqlQuery = "UPDATE films SET likes_count = likes_count - 1 " +
+                "WHERE film_id IN (SELECT film_id FROM likes WHERE user_id = ?);";
         jdbcTemplate.update(sqlQuery, userId);
         sqlQuery = "DELETE FROM users WHERE user_id = ?;";
         jdbcTemplate.update(sqlQuery, userId);
@@ -141,26 +234,32 @@ public class DBUserStorage implements UserStorage {
         List<User> user = jdbcTemplate.query(sqlQuery, DBUserStorage::createUser, userId);
 
         if (user.size() != 1) {
-            throw new UpdateNonExistObjectException("User с указанным id = " + userId + " не существует " +
-                    "или имеется больще 1");
+            throw nonExistUser(userId);
         }
 
         return user.get(0);
     }
 
-    private void checkAddDuplicateUser(User user) {
-        String sqlQuery = "SELECT * FROM users WHERE email = ? OR login = ?;";
-        List<User> result = jdbcTemplate.query(sqlQuery, DBUserStorage::createUser, user.getEmail(), user.getLogin());
+    private static UpdateNonExistObjectException nonExistUser(int userId) {
+        return new UpdateNonExistObjectException("User с указанным id = " + userId + " не существует " +
+                "или имеется больще 1");
+    }
 
-        if (result.size() != 0) {
-            if (user.getEmail().equals(result.get(0).getEmail()) && user.getLogin().equals(result.get(0).getLogin())) {
-                throw new AddExistObjectException("Этот email и login уже заняты email = " + user.getEmail() +
-                        ", login = " + user.getLogin());
-            }
-            if (user.getEmail().equals(result.get(0).getEmail())) {
-                throw new AddExistObjectException("Этот email уже занят email = " + user.getEmail());
-            }
-            throw new AddExistObjectException("Этот login уже занят login = " + user.getLogin());
+    // вызывается после нарушения уникальности email или login, чтобы сообщить, что именно занято
+    private AddExistObjectException duplicateUser(User user) {
+        String sqlQuery = "SELECT * FROM users WHERE (email = ? OR login = ?) AND user_id <> ?;";
+        List<User> result = jdbcTemplate.query(sqlQuery, DBUserStorage::createUser,
+                user.getEmail(), user.getLogin(), user.getId());
+        boolean email = result.stream().anyMatch(other -> user.getEmail().equals(other.getEmail()));
+        boolean login = result.stream().anyMatch(other -> user.getLogin().equals(other.getLogin()));
+
+        if (email && login) {
+            return new AddExistObjectException("Этот email и login уже заняты email = " + user.getEmail() +
+                    ", login = " + user.getLogin());
+        }
+        if (email) {
+            return new AddExistObjectException("Этот email уже занят email = " + user.getEmail());
         }
+        return new AddExistObjectException("Этот login уже занят login = " + user.getLogin());
     }
 }
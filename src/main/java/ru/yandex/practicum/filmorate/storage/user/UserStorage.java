@@ -2,15 +2,37 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     Map<Integer, User> getAllUsers();
 
+    // передаёт пользователей без друзей по одному по возрастанию id, не загружая их все в память
+    void forEachUser(Consumer<User> action);
+
+    // не больше limit пользователей с id больше afterId по возрастанию id
+    List<User> getUsersPage(int afterId, int limit);
+
     User getUser(int userId);
 
+    boolean existsUser(int userId);
+
+    // бросает UpdateNonExistObjectException, если пользователя нет
+    void checkExistsUser(int userId);
+
+    List<Integer> getUserIds();
+
+    // пользователи с указанными id по возрастанию id, несуществующие id пропускаются
+    List<User> getUsers(Collection<Integer> userIds);
+
     User addUser(User user);
 
+    // добавляет пользователей одним пакетом, id пользователей назначает база
+    List<User> addUsers(List<User> users);
+
     User updateUser(User user);
 
     User deleteUser(int userId);
@@ -9,16 +9,21 @@ CREATE TABLE IF NOT EXISTS films (
     description VARCHAR(200) NOT NULL,
     release_date DATE NOT NULL,
     duration INTEGER NOT NULL,
-    mpa_id INTEGER NOT NULL REFERENCES mpa (mpa_id)
+    mpa_id INTEGER NOT NULL REFERENCES mpa (mpa_id),
+    likes_count INTEGER NOT NULL DEFAULT 0
 );
 
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, film_id);
+
 CREATE TABLE IF NOT EXISTS genres (
     genre_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR(255) NOT NULL
 );
 
 CREATE TABLE IF NOT EXISTS film_genres (
-    film_id INTEGER REFERENCES films (film_id),
+    film_id INTEGER,
     genre_id INTEGER REFERENCES genres (genre_id),
     PRIMARY KEY(film_id, genre_id)
 );
@@ -32,15 +37,15 @@ CREATE TABLE IF NOT EXISTS users (
 );
 
 CREATE TABLE IF NOT EXISTS friends (
-    user_id INTEGER REFERENCES users (user_id),
-    friend_id INTEGER REFERENCES users (user_id),
+    user_id INTEGER,
+    friend_id INTEGER,
     PRIMARY KEY (user_id, friend_id)
 );
 
 
 CREATE TABLE IF NOT EXISTS likes (
-    user_id INTEGER REFERENCES users (user_id),
-    film_id INTEGER REFERENCES films (film_id),
+    user_id INTEGER,
+    film_id INTEGER,
     PRIMARY KEY (user_id, film_id)
 );
 
@@ -48,13 +53,13 @@ CREATE TABLE IF NOT EXISTS reviews (
     review_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     content VARCHAR(255) NOT NULL,
     is_positive BOOLEAN NOT NULL,
-    user_id INTEGER NOT NULL REFERENCES users (user_id),
-    film_id INTEGER NOT NULL REFERENCES films (film_id)
+    user_id INTEGER NOT NULL,
+    film_id INTEGER NOT NULL
 );
 
 CREATE TABLE IF NOT EXISTS review_user_likes (
-    review_id INTEGER REFERENCES reviews (review_id),
-    user_id INTEGER REFERENCES users (user_id),
+    review_id INTEGER,
+    user_id INTEGER,
     is_positive INTEGER NOT NULL,
     PRIMARY KEY (review_id, user_id)
 );
@@ -69,22 +74,65 @@ CREATE TABLE IF NOT EXISTS operations (
     name VARCHAR(6) NOT NULL
 );
 
+CREATE SEQUENCE IF NOT EXISTS feed_event_id_seq;
+
 CREATE TABLE IF NOT EXISTS feed (
-    event_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_id INTEGER DEFAULT NEXT VALUE FOR feed_event_id_seq PRIMARY KEY,
     timestamp timestamp NOT NULL DEFAULT(CURRENT_TIMESTAMP()),
-    user_id INTEGER NOT NULL REFERENCES users (user_id),
+    user_id INTEGER NOT NULL,
     event_type_id INTEGER NOT NULL REFERENCES event_types (event_type_id),
     operation_id INTEGER NOT NULL REFERENCES operations (operation_id),
     entity_id INTEGER NOT NULL
 );
 
+ALTER TABLE feed ALTER COLUMN event_id DROP IDENTITY;
+
+ALTER TABLE feed ALTER COLUMN event_id SET DEFAULT NEXT VALUE FOR feed_event_id_seq;
+
+CREATE INDEX IF NOT EXISTS feed_user_event_idx ON feed (user_id, event_id);
+
 CREATE TABLE IF NOT EXISTS directors (
     director_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR(255) NOT NULL
 );
 
 CREATE TABLE IF NOT EXISTS film_directors (
-    film_id INTEGER REFERENCES films (film_id),
+    film_id INTEGER,
     director_id INTEGER REFERENCES directors (director_id) ON DELETE CASCADE,
     PRIMARY KEY (film_id, director_id)
-);
\ No newline at end of file
+);
+
+-- внешние ключи, удаляющие строки вместе с фильмом или пользователем, добавляются по именам,
+-- чтобы попасть и в базы, созданные раньше. Прежние безымянные ключи удаляет DBSchemaMigration
+ALTER TABLE film_genres ADD CONSTRAINT IF NOT EXISTS film_genres_film_fk
+    FOREIGN KEY (film_id) REFERENCES films (film_id) ON DELETE CASCADE;
+
+ALTER TABLE friends ADD CONSTRAINT IF NOT EXISTS friends_user_fk
+    FOREIGN KEY (user_id) REFERENCES users (user_id) ON DELETE CASCADE;
+
+ALTER TABLE friends ADD CONSTRAINT IF NOT EXISTS friends_friend_fk
+    FOREIGN KEY (friend_id) REFERENCES users (user_id) ON DELETE CASCADE;
+
+ALTER TABLE likes ADD CONSTRAINT IF NOT EXISTS likes_user_fk
+    FOREIGN KEY (user_id) REFERENCES users (user_id) ON DELETE CASCADE;
+
+ALTER TABLE likes ADD CONSTRAINT IF NOT EXISTS likes_film_fk
+    FOREIGN KEY (film_id) REFERENCES films (film_id) ON DELETE CASCADE;
+
+ALTER TABLE reviews ADD CONSTRAINT IF NOT EXISTS reviews_user_fk
+    FOREIGN KEY (user_id) REFERENCES users (user_id) ON DELETE CASCADE;
+
+ALTER TABLE reviews ADD CONSTRAINT IF NOT EXISTS reviews_film_fk
+    FOREIGN KEY (film_id) REFERENCES films (film_id) ON DELETE CASCADE;
+
+ALTER TABLE review_user_likes ADD CONSTRAINT IF NOT EXISTS review_user_likes_review_fk
+    FOREIGN KEY (review_id) REFERENCES reviews (review_id) ON DELETE CASCADE;
+
+ALTER TABLE review_user_likes ADD CONSTRAINT IF NOT EXISTS review_user_likes_user_fk
+    FOREIGN KEY (user_id) REFERENCES users (user_id) ON DELETE CASCADE;
+
+ALTER TABLE feed ADD CONSTRAINT IF NOT EXISTS feed_user_fk
+    FOREIGN KEY (user_id) REFERENCES users (user_id) ON DELETE CASCADE;
+
+ALTER TABLE film_directors ADD CONSTRAINT IF NOT EXISTS film_directors_film_fk
+    FOREIGN KEY (film_id) REFERENCES films (film_id) ON DELETE CASCADE;
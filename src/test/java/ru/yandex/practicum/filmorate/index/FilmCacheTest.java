@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class FilmCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyRead() {
+        // по 2 фильма на каждую из 16 частей, фильмы 1, 17 и 33 попадают в одну часть
+        FilmCache cache = new FilmCache(32, 60000);
+        put(cache, film(1));
+        put(cache, film(17));
+        put(cache, film(2));
+        cache.get(1);
+        put(cache, film(33));
+
+        Assertions.assertNotNull(cache.get(1), "Недавно прочитанный фильм вытеснен из кэша");
+        Assertions.assertNull(cache.get(17), "Дольше всех не читавшийся фильм не вытеснен из кэша");
+        Assertions.assertNotNull(cache.get(33), "Добавленный фильм не сохранён в кэше");
+        Assertions.assertNotNull(cache.get(2), "Вытеснен фильм из другой части кэша");
+        Assertions.assertEquals(1L, cache.getMetrics().get("evictions"),
+                "Количество вытеснений считается неправильно");
+        Assertions.assertTrue((long) cache.getMetrics().get("memoryBytes") > 0,
+                "Объём памяти кэша не посчитан");
+    }
+
+    @Test
+    public void expiresByTtl() {
+        FilmCache cache = new FilmCache(10, -1);
+        put(cache, film(1));
+
+        Assertions.assertNull(cache.get(1), "Устаревший фильм возвращается из кэша");
+        Assertions.assertEquals(1L, cache.getMetrics().get("expirations"),
+                "Количество устаревших записей считается неправильно");
+    }
+
+    @Test
+    public void updatesLikesInPlace() {
+        FilmCache cache = new FilmCache(10, 60000);
+        put(cache, film(1));
+
+        cache.addLike(1, 7);
+        cache.removeLike(1, 5);
+        cache.get(1).getUserLikes().add(100);
+
+        Assertions.assertEquals(Set.of(7), cache.get(1).getUserLikes(),
+                "Лайки фильма в кэше обновляются неправильно");
+    }
+
+    @Test
+    public void rejectsStaleLoads() {
+        FilmCache cache = new FilmCache(10, 60000);
+
+        long stamp = cache.stamp(1);
+        cache.addLike(1, 7);
+        cache.put(film(1), stamp);
+        Assertions.assertNull(cache.get(1), "Фильм, загруженный до изменения лайков, сохранён в кэше");
+
+        put(cache, film(1));
+        put(cache, film(2));
+        cache.invalidate(1);
+        cache.invalidateDirector(10);
+
+        Assertions.assertNull(cache.get(1), "Изменённый фильм остался в кэше");
+        Assertions.assertNull(cache.get(2), "Фильм переименованного режиссёра остался в кэше");
+        Assertions.assertEquals(1L, cache.getMetrics().get("rejectedPuts"),
+                "Количество отклонённых записей считается неправильно");
+    }
+
+    private void put(FilmCache cache, Film film) {
+        cache.put(film, cache.stamp(film.getId()));
+    }
+
+    // у фильмов с чётным id режиссёр с id = 10
+    private Film film(int id) {
+        Film film = new Film();
+        film.setId(id);
+        film.setName("name " + id);
+        film.setDescription("description " + id);
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        film.setMpa(new Mpa(1, "G"));
+        film.setUserLikes(new HashSet<>(Set.of(5)));
+        if (id % 2 == 0) {
+            film.setDirectors(new LinkedHashSet<>(Set.of(Director.builder().id(10).name("director").build())));
+        }
+        return film;
+    }
+}
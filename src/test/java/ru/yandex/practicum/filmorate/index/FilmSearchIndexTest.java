@@ -0,0 +1,251 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.SearchSuggestion;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enumerations.SuggestionType;
+import ru.yandex.practicum.filmorate.storage.DBFilmDirectorStorage;
+import ru.yandex.practicum.filmorate.storage.DBFilmGenreStorage;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+import ru.yandex.practicum.filmorate.storage.director.DBDirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@JdbcTest
+public class FilmSearchIndexTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBFilmStorage filmStorage;
+    private final DBDirectorStorage directorStorage;
+    private final DBFilmDirectorStorage filmDirectorStorage;
+    private final DBLikesStorage likesStorage;
+    private final PopularityLeaderboard leaderboard;
+    private final FilmSearchIndex searchIndex;
+
+    @Autowired
+    public FilmSearchIndexTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.filmStorage = new DBFilmStorage(jdbcTemplate);
+        this.directorStorage = new DBDirectorStorage(jdbcTemplate);
+        this.filmDirectorStorage = new DBFilmDirectorStorage(jdbcTemplate);
+        this.likesStorage = new DBLikesStorage(jdbcTemplate);
+        this.leaderboard = new PopularityLeaderboard(filmStorage, new DBFilmGenreStorage(jdbcTemplate), likesStorage);
+        this.searchIndex = new FilmSearchIndex(filmStorage, directorStorage, leaderboard);
+    }
+
+    @BeforeEach
+    public void fillFilms() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.execute("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;");
+        jdbcTemplate.execute("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1;");
+
+        DBUserStorage userStorage = new DBUserStorage(jdbcTemplate);
+        for (int i = 1; i <= 3; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, i));
+            userStorage.addUser(user);
+        }
+
+        List<String> names = List.of("Крёстный отец", "Отец невесты", "Inception", "Interstellar", "100% Love");
+        for (int i = 0; i < names.size(); ++i) {
+            Film film = new Film();
+            film.setName(names.get(i));
+            film.setDescription("description");
+            film.setReleaseDate(LocalDate.of(2000, 1, i + 1));
+            film.setDuration(100);
+            film.setMpa(new Mpa(1, ""));
+            filmStorage.addFilm(film);
+        }
+
+        directorStorage.addDirector(Director.builder().name("Christopher Nolan").build());
+        directorStorage.addDirector(Director.builder().name("Фрэнсис Форд Коппола").build());
+        filmDirectorStorage.addFilmDirector(3, 1);
+        filmDirectorStorage.addFilmDirector(4, 1);
+        filmDirectorStorage.addFilmDirector(1, 2);
+
+        likesStorage.addLike(4, Set.of(1, 2));
+        likesStorage.addLike(2, Set.of(3));
+
+        leaderboard.rebuild();
+        searchIndex.rebuild();
+    }
+
+    @Test
+    public void searchMatchesLike() {
+        for (String query : List.of("", "о", "ОТЕЦ", "in", "nte", "interstellar", "stella", "nol", "олл",
+                "Коппола", "100%", "%", "_", "xyz")) {
+            for (boolean byDirector : List.of(true, false)) {
+                for (boolean byTitle : List.of(true, false)) {
+                    Set<Integer> expected = searchWithLike(query, byDirector, byTitle);
+
+                    Assertions.assertEquals(expected, new HashSet<>(searchIndex.search(query, byDirector, byTitle)),
+                            "Поиск по индексу расходится с поиском в базе для запроса \"" + query + "\" "
+                                    + "byDirector = " + byDirector + ", byTitle = " + byTitle);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void searchRankedByLikes() {
+        Assertions.assertEquals(List.of(4, 3, 5), searchIndex.search("e", false, true),
+                "Результаты поиска упорядочиваются неправильно");
+        Assertions.assertEquals(List.of(2, 1), searchIndex.search("о", true, true),
+                "Результаты поиска по названию и режиссёру упорядочиваются неправильно");
+
+        likesStorage.addLike(1, 1);
+        likesStorage.addLike(2, 1);
+        leaderboard.addLike(1);
+        leaderboard.addLike(1);
+
+        Assertions.assertEquals(List.of(1, 2), searchIndex.search("о", true, true),
+                "Результаты поиска не учитывают изменение количества лайков");
+    }
+
+    @Test
+    public void suggest() {
+        Assertions.assertEquals(List.of("Отец невесты", "Крёстный отец"), suggestionNames("от", 10),
+                "Подсказки по началу слова строятся неправильно");
+        Assertions.assertEquals(List.of("Interstellar", "Inception"), suggestionNames("i", 10),
+                "Подсказки упорядочиваются неправильно");
+        Assertions.assertEquals(List.of("Interstellar"), suggestionNames("i", 1),
+                "Количество подсказок ограничивается неправильно");
+        Assertions.assertEquals(List.of(SearchSuggestion.builder()
+                        .type(SuggestionType.DIRECTOR)
+                        .id(1)
+                        .name("Christopher Nolan")
+                        .likes(2)
+                        .build()),
+                searchIndex.suggest("NoL", 10),
+                "Подсказки по имени режиссёра строятся неправильно");
+        Assertions.assertEquals(List.of(), searchIndex.suggest(" ", 10),
+                "Для пустого запроса возвращаются подсказки");
+
+        searchIndex.updateDirector(Director.builder().id(1).name("Нолан").build());
+        searchIndex.removeFilm(2);
+
+        Assertions.assertEquals(List.of("Крёстный отец"), suggestionNames("от", 10),
+                "Подсказки не обновляются при удалении фильма");
+        Assertions.assertEquals(List.of("Нолан"), suggestionNames("но", 10),
+                "Подсказки не обновляются при изменении режиссёра");
+    }
+
+    @Test
+    public void suggestFromRanking() {
+        // совпадений с префиксом больше, чем сортируется целиком, поэтому подсказки берутся обходом рейтинга
+        List<SearchSuggestion> expected = new ArrayList<>();
+        for (int id = 100; id <= 1100; ++id) {
+            Film film = new Film();
+            film.setId(id);
+            film.setName("Zeta " + id);
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setUserLikes(new HashSet<>(List.of(1, 2, 3).subList(0, id % 4 == 0 ? 3 : id % 3)));
+            film.setDirectors(Set.of(Director.builder().id(id).name("Zorro " + id).build()));
+            leaderboard.putFilm(film);
+            searchIndex.putFilm(film);
+            if (id % 4 == 0) {
+                expected.add(SearchSuggestion.builder()
+                        .type(SuggestionType.FILM)
+                        .id(id)
+                        .name(film.getName())
+                        .likes(3)
+                        .build());
+            }
+        }
+
+        // самый популярный фильм не подходит под префикс и должен быть пропущен
+        leaderboard.addLike(4);
+        leaderboard.addLike(4);
+
+        Assertions.assertEquals(expected.subList(0, 5), searchIndex.suggest("zeta", 5),
+                "Подсказки по рейтингу фильмов строятся неправильно");
+        Assertions.assertEquals(List.of(100, 104), searchIndex.suggest("zorro", 2).stream()
+                        .map(SearchSuggestion::getId)
+                        .collect(Collectors.toList()),
+                "Подсказки по рейтингу режиссёров строятся неправильно");
+    }
+
+    @Test
+    public void suggestDirectorLikes() {
+        searchIndex.addLike(3);
+        searchIndex.addLike(1);
+        searchIndex.removeLike(4);
+        searchIndex.removeLikes(List.of(4, 4));
+
+        Assertions.assertEquals(1, searchIndex.suggest("nolan", 10).get(0).getLikes(),
+                "Лайки режиссёра не обновляются вместе с лайками фильмов");
+        Assertions.assertEquals(1, searchIndex.suggest("коппола", 10).get(0).getLikes(),
+                "Лайки режиссёра не обновляются вместе с лайками фильмов");
+
+        searchIndex.removeFilm(3);
+
+        Assertions.assertEquals(0, searchIndex.suggest("nolan", 10).get(0).getLikes(),
+                "Лайки удалённого фильма остались в сумме режиссёра");
+    }
+
+    @Test
+    public void updateFilmAndDirector() {
+        Film film = filmStorage.getFilm(5);
+        film.setName("Тенет");
+        film.setDirectors(Set.of(Director.builder().id(1).name("Christopher Nolan").build()));
+        searchIndex.putFilm(film);
+
+        Assertions.assertEquals(List.of(), searchIndex.search("love", false, true),
+                "Старое название фильма осталось в индексе");
+        Assertions.assertEquals(List.of(5), searchIndex.search("тенет", false, true),
+                "Новое название фильма не попало в индекс");
+        Assertions.assertEquals(List.of(4, 3, 5), searchIndex.search("nolan", true, false),
+                "Новый режиссёр фильма не попал в индекс");
+
+        searchIndex.updateDirector(Director.builder().id(1).name("Нолан").build());
+
+        Assertions.assertEquals(List.of(), searchIndex.search("nolan", true, false),
+                "Старое имя режиссёра осталось в индексе");
+        Assertions.assertEquals(List.of(4, 3, 5), searchIndex.search("нолан", true, false),
+                "Новое имя режиссёра не попало в индекс");
+
+        searchIndex.removeDirector(1);
+        searchIndex.removeFilm(1);
+
+        Assertions.assertEquals(List.of(), searchIndex.search("н", true, false),
+                "Удалённый режиссёр остался в индексе");
+        Assertions.assertEquals(List.of(2), searchIndex.search("отец", true, true),
+                "Удалённый фильм остался в индексе");
+    }
+
+    // id фильмов, найденных в базе через LIKE '%query%' без учёта регистра
+    private Set<Integer> searchWithLike(String query, boolean byDirector, boolean byTitle) {
+        String pattern = "%" + query.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+        String sqlQuery = "SELECT DISTINCT f.film_id FROM films f "
+                + "LEFT JOIN film_directors fd ON fd.film_id = f.film_id "
+                + "LEFT JOIN directors d ON d.director_id = fd.director_id "
+                + "WHERE (? AND UPPER(f.name) LIKE UPPER(?) ESCAPE '\\') "
+                + "OR (? AND UPPER(d.name) LIKE UPPER(?) ESCAPE '\\');";
+        return new HashSet<>(jdbcTemplate.queryForList(sqlQuery, Integer.class, byTitle, pattern, byDirector, pattern));
+    }
+
+    private List<String> suggestionNames(String query, int count) {
+        return searchIndex.suggest(query, count).stream()
+                .map(SearchSuggestion::getName)
+                .collect(Collectors.toList());
+    }
+}
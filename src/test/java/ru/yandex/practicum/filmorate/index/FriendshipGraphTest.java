@@ -0,0 +1,177 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.DBFriendsStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+
+@JdbcTest
+public class FriendshipGraphTest {
+    private static final int USERS = 60;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DBFriendsStorage friendsStorage;
+
+    @Autowired
+    public FriendshipGraphTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.friendsStorage = new DBFriendsStorage(jdbcTemplate);
+    }
+
+    @BeforeEach
+    public void fillFriends() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+
+        DBUserStorage userStorage = new DBUserStorage(jdbcTemplate);
+        for (int i = 1; i <= USERS; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, 1));
+            userStorage.addUser(user);
+        }
+
+        // у пользователя 1 в друзьях все, у остальных - несколько случайных пользователей
+        Random random = new Random(3);
+        for (int userId = 1; userId <= USERS; ++userId) {
+            for (int friendId = 1; friendId <= USERS; ++friendId) {
+                if (userId != friendId && (userId == 1 || random.nextInt(10) == 0)) {
+                    friendsStorage.addFriend(userId, friendId);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void commonFriends() {
+        FriendshipGraph graph = new FriendshipGraph(friendsStorage, 1000);
+        graph.rebuild();
+
+        for (int userId = 1; userId <= USERS; ++userId) {
+            for (int otherId = 1; otherId <= USERS; otherId += 7) {
+                Set<Integer> expected = new TreeSet<>(friendsStorage.getFriends(userId));
+                expected.retainAll(friendsStorage.getFriends(otherId));
+
+                Assertions.assertEquals(new ArrayList<>(expected), toList(graph.getCommonFriends(userId, otherId)),
+                        "Общие друзья пользователей " + userId + " и " + otherId + " считаются неправильно");
+                Assertions.assertEquals(expected.size(), graph.countCommonFriends(userId, otherId),
+                        "Количество общих друзей пользователей " + userId + " и " + otherId
+                                + " считается неправильно");
+            }
+        }
+
+        Assertions.assertEquals(USERS - 1, graph.getDegree(1),
+                "Количество друзей пользователя считается неправильно");
+        Assertions.assertTrue(graph.hasFriend(1, USERS),
+                "Друг пользователя не найден в графе");
+        Assertions.assertFalse(graph.hasFriend(1, 1),
+                "Пользователь найден в своих друзьях");
+    }
+
+    @Test
+    public void incrementalUpdates() {
+        FriendshipGraph graph = new FriendshipGraph(friendsStorage, 1000);
+        graph.rebuild();
+
+        friendsStorage.addFriend(2, 1);
+        graph.addFriend(2, 1);
+        friendsStorage.deleteFriend(1, 3);
+        graph.deleteFriend(1, 3);
+        friendsStorage.deleteFriends(5);
+        graph.removeUser(5);
+
+        FriendshipGraph rebuilt = new FriendshipGraph(friendsStorage, 1000);
+        rebuilt.rebuild();
+
+        for (int userId = 1; userId <= USERS; ++userId) {
+            Assertions.assertArrayEquals(rebuilt.getFriends(userId), graph.getFriends(userId),
+                    "Друзья пользователя с id = " + userId + " неправильно обновляются в графе");
+            Assertions.assertArrayEquals(rebuilt.getFollowers(userId), graph.getFollowers(userId),
+                    "Подписчики пользователя с id = " + userId + " неправильно обновляются в графе");
+        }
+        Assertions.assertEquals(rebuilt.getMetrics().get("edges"), graph.getMetrics().get("edges"),
+                "Количество связей в графе считается неправильно");
+        Assertions.assertTrue((long) graph.getMetrics().get("memoryBytes") > 0,
+                "Объём памяти графа не посчитан");
+    }
+
+    @Test
+    public void suggestFriends() {
+        FriendshipGraph graph = new FriendshipGraph(friendsStorage, 1000);
+        graph.rebuild();
+
+        for (int userId = 2; userId <= USERS; ++userId) {
+            int[] userFriends = graph.getFriends(userId);
+            List<Integer> expected = new ArrayList<>();
+            for (int otherId = 1; otherId <= USERS; ++otherId) {
+                if (otherId != userId && !SortedIntArrays.contains(userFriends, otherId)
+                        && graph.countCommonFriends(userId, otherId) > 0) {
+                    expected.add(otherId);
+                }
+            }
+            int user = userId;
+            expected.sort(Comparator.<Integer>comparingInt(otherId -> -graph.countCommonFriends(user, otherId))
+                    .thenComparingInt(otherId -> otherId));
+
+            Assertions.assertEquals(expected.subList(0, Math.min(5, expected.size())), graph.suggestFriends(userId, 5),
+                    "Возможные друзья пользователя с id = " + userId + " ранжируются неправильно");
+        }
+
+        // на пользователя 2 подписаны не меньше двух пользователей, с hub-cap = 1 через него кандидаты не ищутся
+        FriendshipGraph capped = new FriendshipGraph(friendsStorage, 1);
+        capped.rebuild();
+        friendsStorage.addFriend(USERS, 2);
+        capped.addFriend(USERS, 2);
+
+        for (int candidateId : capped.suggestFriends(USERS, USERS)) {
+            Assertions.assertTrue(capped.countCommonFriends(USERS, candidateId) > 0,
+                    "Возможный друг без общих друзей");
+        }
+        Assertions.assertTrue((long) capped.getMetrics().get("skippedHubs") > 0,
+                "Друзья с большим числом подписчиков не пропускаются");
+        Assertions.assertEquals(List.of(), graph.suggestFriends(1, 10),
+                "Пользователю, у которого в друзьях все, предлагаются друзья");
+    }
+
+    @Test
+    public void intersectionOfSkewedArrays() {
+        Random random = new Random(5);
+        for (int attempt = 0; attempt < 100; ++attempt) {
+            int[] small = randomSortedArray(random, 1 + random.nextInt(5), 2000);
+            int[] large = randomSortedArray(random, 200 + random.nextInt(800), 2000);
+
+            Set<Integer> expected = new TreeSet<>(toList(small));
+            expected.retainAll(toList(large));
+
+            Assertions.assertEquals(new ArrayList<>(expected), toList(SortedIntArrays.intersection(small, large)),
+                    "Пересечение массивов разной длины считается неправильно");
+            Assertions.assertEquals(expected.size(), SortedIntArrays.intersectionSize(large, small),
+                    "Размер пересечения массивов разной длины считается неправильно");
+        }
+    }
+
+    private int[] randomSortedArray(Random random, int size, int bound) {
+        Set<Integer> values = new HashSet<>();
+        while (values.size() < size) {
+            values.add(random.nextInt(bound));
+        }
+        return SortedIntArrays.toSortedArray(values);
+    }
+
+    private List<Integer> toList(int[] array) {
+        List<Integer> result = new ArrayList<>();
+        for (int value : array) {
+            result.add(value);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.DBFilmGenreStorage;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@JdbcTest
+public class PopularityLeaderboardTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBFilmStorage filmStorage;
+    private final DBFilmGenreStorage filmGenreStorage;
+    private final DBLikesStorage likesStorage;
+    private final DBUserStorage userStorage;
+    private final PopularityLeaderboard leaderboard;
+
+    @Autowired
+    public PopularityLeaderboardTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.filmStorage = new DBFilmStorage(jdbcTemplate);
+        this.filmGenreStorage = new DBFilmGenreStorage(jdbcTemplate);
+        this.likesStorage = new DBLikesStorage(jdbcTemplate);
+        this.userStorage = new DBUserStorage(jdbcTemplate);
+        this.leaderboard = new PopularityLeaderboard(filmStorage, filmGenreStorage, likesStorage);
+    }
+
+    @BeforeEach
+    public void fillFilmsAndLikes() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.execute("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;");
+
+        for (int i = 1; i <= 5; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, i));
+            userStorage.addUser(user);
+        }
+
+        // фильмы 1-3 выпущены в 2000 году, 4-5 в 2001, у нечётных фильмов жанр 1, у чётных - 2
+        for (int i = 1; i <= 5; ++i) {
+            Film film = new Film();
+            film.setName("name " + i);
+            film.setDescription("description " + i);
+            film.setReleaseDate(LocalDate.of(i <= 3 ? 2000 : 2001, 1, i));
+            film.setDuration(100);
+            film.setMpa(new Mpa(1, ""));
+            filmStorage.addFilm(film);
+            filmGenreStorage.addFilmGenre(film.getId(), i % 2 == 1 ? 1 : 2);
+        }
+
+        likesStorage.addLike(2, Set.of(1, 2, 3));
+        likesStorage.addLike(4, Set.of(1, 2));
+        likesStorage.addLike(5, Set.of(1));
+
+        leaderboard.rebuild();
+    }
+
+    @Test
+    public void rebuild() {
+        Assertions.assertEquals(5, leaderboard.size(),
+                "Рейтинг популярности перестраивается неправильно");
+        Assertions.assertEquals(List.of(2, 4, 5, 1, 3), leaderboard.getMostLiked(10, 0, 0),
+                "Общий рейтинг популярности строится неправильно");
+        Assertions.assertEquals(List.of(2, 4), leaderboard.getMostLiked(2, 0, 0),
+                "Рейтинг популярности неправильно ограничивается по количеству");
+    }
+
+    @Test
+    public void getMostLikedByGenreAndYear() {
+        Assertions.assertEquals(List.of(5, 1, 3), leaderboard.getMostLiked(10, 1, 0),
+                "Рейтинг популярности по жанру строится неправильно");
+        Assertions.assertEquals(List.of(4, 5), leaderboard.getMostLiked(10, 0, 2001),
+                "Рейтинг популярности по году строится неправильно");
+        Assertions.assertEquals(List.of(2), leaderboard.getMostLiked(10, 2, 2000),
+                "Рейтинг популярности по жанру и году строится неправильно");
+        Assertions.assertEquals(List.of(), leaderboard.getMostLiked(10, 3, 0),
+                "Рейтинг популярности по жанру без фильмов строится неправильно");
+    }
+
+    @Test
+    public void changeLikes() {
+        leaderboard.addLike(3);
+        leaderboard.addLike(3);
+        leaderboard.addLike(3);
+        leaderboard.addLike(3);
+
+        Assertions.assertEquals(List.of(3, 2), leaderboard.getMostLiked(2, 0, 0),
+                "Рейтинг популярности неправильно обновляется при добавлении лайка");
+        Assertions.assertEquals(List.of(3, 5), leaderboard.getMostLiked(2, 1, 0),
+                "Рейтинг популярности по жанру неправильно обновляется при добавлении лайка");
+
+        leaderboard.removeLikes(List.of(3, 3, 3, 2, 2));
+
+        Assertions.assertEquals(List.of(4, 2, 3, 5, 1), leaderboard.getMostLiked(10, 0, 0),
+                "Рейтинг популярности неправильно обновляется при удалении лайков");
+    }
+
+    @Test
+    public void putAndRemoveFilm() {
+        Film film = filmStorage.getFilm(1);
+        film.setReleaseDate(LocalDate.of(2001, 1, 1));
+        Genre genre = new Genre();
+        genre.setId(2);
+        film.setGenres(Set.of(genre));
+        film.setUserLikes(new HashSet<>(Set.of(1, 2, 3, 4, 5)));
+        leaderboard.putFilm(film);
+
+        Assertions.assertEquals(List.of(1, 2, 4), leaderboard.getMostLiked(10, 2, 0),
+                "Рейтинг популярности неправильно обновляется при изменении фильма");
+        Assertions.assertEquals(List.of(1, 4, 5), leaderboard.getMostLiked(10, 0, 2001),
+                "Рейтинг популярности неправильно обновляется при изменении фильма");
+        Assertions.assertEquals(List.of(5, 3), leaderboard.getMostLiked(10, 1, 0),
+                "Рейтинг популярности неправильно обновляется при изменении фильма");
+
+        leaderboard.removeFilm(1);
+
+        Assertions.assertEquals(4, leaderboard.size(),
+                "Фильм неправильно удаляется из рейтинга популярности");
+        Assertions.assertEquals(List.of(2, 4, 5, 3), leaderboard.getMostLiked(10, 0, 0),
+                "Фильм неправильно удаляется из рейтинга популярности");
+    }
+}
@@ -0,0 +1,147 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@JdbcTest
+public class RecommendationCacheTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBLikesStorage likesStorage;
+    private final RecommendationEngine engine;
+    private final RecommendationCache cache;
+
+    @Autowired
+    public RecommendationCacheTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.likesStorage = new DBLikesStorage(jdbcTemplate);
+        this.engine = new RecommendationEngine(likesStorage, 1, 0, 0, 0);
+        this.cache = new RecommendationCache(engine, 60000, false, 100, 1, 10);
+    }
+
+    @BeforeEach
+    public void fillLikes() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.execute("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;");
+
+        DBUserStorage userStorage = new DBUserStorage(jdbcTemplate);
+        for (int i = 1; i <= 4; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, 1));
+            userStorage.addUser(user);
+        }
+
+        DBFilmStorage filmStorage = new DBFilmStorage(jdbcTemplate);
+        for (int i = 1; i <= 5; ++i) {
+            Film film = new Film();
+            film.setName("name " + i);
+            film.setDescription("description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(100);
+            film.setMpa(new Mpa(1, ""));
+            filmStorage.addFilm(film);
+        }
+
+        // пользователи 1 и 2 пересекаются по фильму 1, пользователи 3 и 4 - по фильму 4
+        likesStorage.addLike(1, 1);
+        likesStorage.addLike(2, 1);
+        likesStorage.addLike(2, 2);
+        likesStorage.addLike(3, 4);
+        likesStorage.addLike(4, 4);
+        likesStorage.addLike(4, 5);
+        engine.rebuild();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        cache.shutdown();
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        Assertions.assertEquals(List.of(2), cache.getRecommendations(1),
+                "Рекомендации из кэша расходятся с рассчитанными");
+        Assertions.assertEquals(List.of(2), cache.getRecommendations(1),
+                "Рекомендации из кэша расходятся с рассчитанными");
+
+        Assertions.assertEquals(1L, cache.getMetrics().get("hits"),
+                "Попадания в кэш рекомендаций считаются неправильно");
+        Assertions.assertEquals(1L, cache.getMetrics().get("misses"),
+                "Промахи кэша рекомендаций считаются неправильно");
+        Assertions.assertEquals(0.5, cache.getMetrics().get("hitRate"),
+                "Доля попаданий в кэш рекомендаций считается неправильно");
+    }
+
+    @Test
+    public void invalidateLike() throws InterruptedException {
+        cache.getRecommendations(1);
+        cache.getRecommendations(2);
+        cache.getRecommendations(3);
+
+        likesStorage.addLike(2, 3);
+        engine.addLike(2, 3);
+        cache.invalidateLike(2, 3);
+
+        awaitRefreshed(2);
+
+        Assertions.assertEquals(0, cache.getMetrics().get("staleEntries"),
+                "Устаревшие рекомендации не пересчитываются в фоне");
+        Assertions.assertEquals(2L, cache.getMetrics().get("refreshed"),
+                "В фоне пересчитываются рекомендации пользователей, которых не затронуло изменение");
+        Assertions.assertEquals(List.of(2, 3), cache.getRecommendations(1),
+                "Рекомендации не обновились после изменения лайков соседа");
+        Assertions.assertEquals(1L, cache.getMetrics().get("hits"),
+                "Пересчитанные рекомендации не попали в кэш");
+
+        cache.invalidateAll();
+        awaitRefreshed(5);
+
+        Assertions.assertEquals(5L, cache.getMetrics().get("refreshed"),
+                "Рекомендации не пересчитываются после сброса всего кэша");
+    }
+
+    @Test
+    public void boundedByMaxSize() {
+        RecommendationCache smallCache = new RecommendationCache(engine, 60000, false, 2, 1, 10);
+        smallCache.getRecommendations(1);
+        smallCache.getRecommendations(2);
+        smallCache.getRecommendations(1);
+        smallCache.getRecommendations(3);
+        smallCache.getRecommendations(1);
+
+        Assertions.assertEquals(2L, smallCache.getMetrics().get("hits"),
+                "Недавно прочитанный пользователь вытеснен из кэша");
+        Assertions.assertEquals(1L, smallCache.getMetrics().get("evictions"),
+                "Дольше всех не читавшийся пользователь не вытеснен из кэша");
+
+        // изменение лайков пользователей без записи не добавляет их в кэш
+        smallCache.invalidateLike(2, 1);
+        smallCache.invalidateLike(4, 4);
+
+        Assertions.assertEquals(2, smallCache.getMetrics().get("size"),
+                "Размер кэша рекомендаций превышает max-size");
+        smallCache.shutdown();
+    }
+
+    private void awaitRefreshed(long count) throws InterruptedException {
+        for (int i = 0; i < 200 && (long) cache.getMetrics().get("refreshed") < count; ++i) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@JdbcTest
+public class RecommendationEngineTest {
+    private static final int USERS = 30;
+    private static final int FILMS = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DBLikesStorage likesStorage;
+
+    @Autowired
+    public RecommendationEngineTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.likesStorage = new DBLikesStorage(jdbcTemplate);
+    }
+
+    @BeforeEach
+    public void fillUsersAndFilms() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.execute("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;");
+
+        DBUserStorage userStorage = new DBUserStorage(jdbcTemplate);
+        for (int i = 1; i <= USERS; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, 1));
+            userStorage.addUser(user);
+        }
+
+        DBFilmStorage filmStorage = new DBFilmStorage(jdbcTemplate);
+        for (int i = 1; i <= FILMS; ++i) {
+            Film film = new Film();
+            film.setName("name " + i);
+            film.setDescription("description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(100);
+            film.setMpa(new Mpa(1, ""));
+            filmStorage.addFilm(film);
+        }
+    }
+
+    @Test
+    public void sameResultAsSingleNeighbourScan() {
+        Random random = new Random(7);
+        for (int userId = 1; userId <= USERS - 3; ++userId) {
+            for (int filmId = 1; filmId <= FILMS; ++filmId) {
+                if (random.nextInt(4) == 0) {
+                    likesStorage.addLike(userId, filmId);
+                }
+            }
+        }
+        // у пользователя без общих лайков соседом становится пользователь с наименьшим id
+        likesStorage.addLike(USERS - 2, FILMS);
+        likesStorage.addLike(USERS - 1, 1);
+
+        RecommendationEngine engine = new RecommendationEngine(likesStorage, 1, 0, 0, 0);
+        engine.rebuild();
+
+        for (int userId = 1; userId <= USERS; ++userId) {
+            Assertions.assertEquals(recommendByScan(userId), engine.recommend(userId),
+                    "Рекомендации для пользователя с id = " + userId + " расходятся с прежним алгоритмом");
+        }
+    }
+
+    @Test
+    public void recommendByWeightedVotes() {
+        likeFilms(1, 1);
+        likeFilms(2, 1, 2, 3, 4);
+        likeFilms(3, 2, 3, 4);
+        likeFilms(4, 2);
+        likeFilms(5, 3);
+        likeFilms(6, 1, 4);
+        likeFilms(7, 1, 5);
+
+        RecommendationEngine single = new RecommendationEngine(likesStorage, 1, 0, 0, 0);
+        single.rebuild();
+        RecommendationEngine engine = new RecommendationEngine(likesStorage, 3, 0, 0, 0);
+        engine.rebuild();
+
+        // у пользователя 1 по одному общему фильму с 2, 6 и 7
+        Assertions.assertEquals(List.of(2, 3, 4), single.recommend(1),
+                "Рекомендации по одному соседу строятся неправильно");
+        Assertions.assertEquals(List.of(4, 2, 3, 5), engine.recommend(1),
+                "Рекомендации по нескольким соседям взвешиваются неправильно");
+        // у пользователя 4 общие фильмы только с 2 и 3, третьим соседом становится пользователь 1
+        Assertions.assertEquals(List.of(3, 4, 1), engine.recommend(4),
+                "Соседи без общих лайков выбираются неправильно");
+        Assertions.assertEquals(List.of(), engine.recommend(8),
+                "Пользователю без лайков рекомендуются фильмы");
+    }
+
+    @Test
+    public void incrementalUpdates() {
+        likesStorage.addLike(1, Set.of(1, 2));
+        likesStorage.addLike(2, Set.of(2, 3));
+        likesStorage.addLike(3, Set.of(3, 4));
+
+        RecommendationEngine engine = new RecommendationEngine(likesStorage, 2, 0, 0, 0);
+        engine.rebuild();
+
+        likesStorage.addLike(5, 4);
+        engine.addLike(5, 4);
+        likesStorage.deleteLike(2, 3);
+        engine.removeLike(2, 3);
+        likesStorage.deleteFilmLikes(1);
+        likesStorage.addLike(1, Set.of(4, 5, 6));
+        engine.setFilmLikes(1, Set.of(4, 5, 6));
+        likesStorage.deleteUserLikes(3);
+        engine.removeUser(3);
+        likesStorage.deleteFilmLikes(2);
+        engine.removeFilm(2);
+
+        RecommendationEngine rebuilt = new RecommendationEngine(likesStorage, 2, 0, 0, 0);
+        rebuilt.rebuild();
+
+        for (int userId = 1; userId <= 7; ++userId) {
+            Assertions.assertEquals(rebuilt.recommend(userId), engine.recommend(userId),
+                    "Индекс рекомендаций неправильно обновляется для пользователя с id = " + userId);
+        }
+        Assertions.assertEquals(rebuilt.getMetrics().get("likes"), engine.getMetrics().get("likes"),
+                "Количество лайков в индексе рекомендаций считается неправильно");
+    }
+
+    @Test
+    public void minHashCandidates() {
+        MinHashIndex index = new MinHashIndex(8, 2);
+        index.setFilms(1, new int[]{1, 2, 3});
+        index.setFilms(2, new int[]{1, 2, 3});
+        index.setFilms(3, new int[]{4, 5, 6});
+        index.addFilm(4, 6);
+        index.addFilm(4, 5);
+        index.addFilm(4, 4);
+
+        Assertions.assertEquals(Set.of(2), index.getCandidates(1),
+                "Пользователи с одинаковыми лайками не попадают в одну корзину");
+        Assertions.assertEquals(Set.of(3), index.getCandidates(4),
+                "Сигнатура неправильно обновляется при добавлении фильма");
+
+        index.setFilms(2, new int[]{});
+
+        Assertions.assertEquals(Set.of(), index.getCandidates(1),
+                "Пользователь без лайков остался в корзинах");
+        Assertions.assertEquals(3, index.size(),
+                "Пользователь без лайков остался в индексе");
+    }
+
+    @Test
+    public void lshRecall() {
+        // три группы пользователей с похожими вкусами внутри группы
+        Random random = new Random(11);
+        for (int userId = 1; userId <= USERS - 3; ++userId) {
+            int firstFilm = userId <= 10 ? 1 : userId <= 20 ? 8 : 15;
+            for (int filmId = firstFilm; filmId < firstFilm + 6; ++filmId) {
+                if (random.nextInt(5) < 3) {
+                    likesStorage.addLike(userId, filmId);
+                }
+            }
+        }
+
+        RecommendationEngine exact = new RecommendationEngine(likesStorage, 3, 0, 0, 0);
+        exact.rebuild();
+        RecommendationEngine lsh = new RecommendationEngine(likesStorage, 3, 32, 2, 1);
+        lsh.rebuild();
+
+        int same = 0;
+        for (int userId = 1; userId <= USERS; ++userId) {
+            if (exact.recommend(userId).equals(lsh.recommend(userId))) {
+                ++same;
+            }
+        }
+
+        Assertions.assertTrue((double) lsh.getMetrics().get("recall") >= 0.9,
+                "Полнота поиска соседей через LSH слишком низкая: " + lsh.getMetrics().get("recall"));
+        Assertions.assertTrue(same >= USERS * 0.8,
+                "Рекомендации через LSH слишком часто расходятся с точными: совпало " + same + " из " + USERS);
+
+        likesStorage.addLike(1, 20);
+        lsh.addLike(1, 20);
+        likesStorage.deleteLike(2, 1);
+        lsh.removeLike(2, 1);
+        likesStorage.deleteUserLikes(3);
+        lsh.removeUser(3);
+
+        RecommendationEngine rebuilt = new RecommendationEngine(likesStorage, 3, 32, 2, 0);
+        rebuilt.rebuild();
+
+        for (int userId = 1; userId <= USERS; ++userId) {
+            Assertions.assertEquals(rebuilt.recommend(userId), lsh.recommend(userId),
+                    "Индекс LSH неправильно обновляется для пользователя с id = " + userId);
+        }
+    }
+
+    private void likeFilms(int userId, int... filmIds) {
+        for (int filmId : filmIds) {
+            likesStorage.addLike(userId, filmId);
+        }
+    }
+
+    // прежний алгоритм UserService.getRecommendations, фильмы из базы возвращались по возрастанию id
+    private List<Integer> recommendByScan(int userId) {
+        Map<Integer, List<Integer>> allUsers = likesStorage.getUsersLikes();
+        List<Integer> userList = allUsers.getOrDefault(userId, Collections.emptyList());
+
+        if (userList.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Integer, Integer> recMap = allUsers.entrySet().stream()
+                .filter(entry -> entry.getKey() != userId)
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> {
+                    List<Integer> friendList = entry.getValue();
+                    return (int) userList.stream().filter(friendList::contains).count();
+                }));
+
+        if (recMap.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int friendId = Collections.max(recMap.entrySet(), Map.Entry.comparingByValue()).getKey();
+        return allUsers.getOrDefault(friendId, Collections.emptyList())
+                .stream()
+                .filter(id -> !userList.contains(id))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
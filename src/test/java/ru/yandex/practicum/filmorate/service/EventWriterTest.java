@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enumerations.EventType;
+import ru.yandex.practicum.filmorate.model.enumerations.Operation;
+import ru.yandex.practicum.filmorate.storage.feed.DBEventStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@JdbcTest
+public class EventWriterTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBEventStorage eventStorage;
+
+    @Autowired
+    public EventWriterTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventStorage = new DBEventStorage(jdbcTemplate);
+    }
+
+    @BeforeEach
+    public void fillUsers() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.update("ALTER SEQUENCE feed_event_id_seq RESTART WITH 1;");
+
+        DBUserStorage userStorage = new DBUserStorage(jdbcTemplate);
+        for (int i = 1; i <= 2; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, 1));
+            userStorage.addUser(user);
+        }
+    }
+
+    @Test
+    public void writeInBatches() throws InterruptedException {
+        EventWriter eventWriter = new EventWriter(eventStorage, 100, 3, 60000);
+
+        for (int i = 1; i <= 7; ++i) {
+            eventWriter.write(event(1, i));
+        }
+        // часть пакетов может записать фоновый поток, как только в очереди наберётся три события
+        eventWriter.flush();
+
+        List<Event> events = eventStorage.getByUserId(1, 0, 100);
+        Assertions.assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), entityIds(events),
+                "События записаны не в порядке добавления");
+        Assertions.assertTrue(events.get(0).getTimestamp() > 0,
+                "Время события не сохранено");
+        Assertions.assertEquals(EventType.LIKE, events.get(0).getEventType(),
+                "Тип события записан неправильно");
+        Assertions.assertEquals(7L, eventWriter.getMetrics().get("written"),
+                "Записанные события считаются неправильно");
+        Assertions.assertTrue((double) eventWriter.getMetrics().get("avgBatchSize") <= 3,
+                "Пакет событий больше заданного размера");
+
+        eventWriter.shutdown();
+    }
+
+    @Test
+    public void backpressureAndShutdown() throws InterruptedException {
+        EventWriter eventWriter = new EventWriter(eventStorage, 2, 100, 60000);
+
+        for (int i = 1; i <= 5; ++i) {
+            eventWriter.write(event(2, i));
+        }
+        Assertions.assertEquals(2L, eventWriter.getMetrics().get("backpressureFlushes"),
+                "При заполненной очереди события не сбрасываются в базу");
+
+        eventWriter.shutdown();
+
+        Assertions.assertEquals(List.of(1, 2, 3, 4, 5), entityIds(eventStorage.getByUserId(2, 0, 100)),
+                "При остановке очередь событий не дописана в базу");
+    }
+
+    @Test
+    public void skipEventsOfDeletedUsers() throws InterruptedException {
+        EventWriter eventWriter = new EventWriter(eventStorage, 100, 100, 60000);
+
+        eventWriter.write(event(1, 1));
+        eventWriter.write(event(3, 2));
+        eventWriter.write(event(1, 3));
+        eventWriter.shutdown();
+
+        Assertions.assertEquals(List.of(1, 3), entityIds(eventStorage.getByUserId(1, 0, 100)),
+                "Событие несуществующего пользователя помешало записи остальных");
+        Assertions.assertEquals(1L, eventWriter.getMetrics().get("dropped"),
+                "Пропущенные события считаются неправильно");
+        Assertions.assertEquals(0L, eventWriter.getMetrics().get("failedBatches"),
+                "Событие несуществующего пользователя считается ошибкой записи");
+    }
+
+    @Test
+    public void keepEventsWhenWriteFails() throws InterruptedException {
+        FailingEventStorage failingStorage = new FailingEventStorage(jdbcTemplate);
+        EventWriter eventWriter = new EventWriter(failingStorage, 100, 100, 60000);
+
+        eventWriter.write(event(1, 1));
+        eventWriter.write(event(1, 2));
+
+        Assertions.assertFalse(eventWriter.flush(), "Ошибка записи пакета не обнаружена");
+        Assertions.assertEquals(2, eventWriter.getMetrics().get("retryPending"),
+                "Незаписанный пакет не сохранён для повтора");
+
+        eventWriter.write(event(1, 3));
+        eventWriter.shutdown();
+
+        Assertions.assertEquals(List.of(1, 2, 3), entityIds(eventStorage.getByUserId(1, 0, 100)),
+                "События незаписанного пакета потеряны, задвоены или записаны не по порядку");
+        Assertions.assertEquals(1L, eventWriter.getMetrics().get("failedBatches"),
+                "Ошибка записи пакета не учтена");
+        Assertions.assertEquals(0, eventWriter.getMetrics().get("retryPending"),
+                "Пакет не записан повторно");
+    }
+
+    private Event event(int userId, int entityId) {
+        return Event.builder()
+                .userId(userId)
+                .entityId(entityId)
+                .eventType(EventType.LIKE)
+                .operation(Operation.ADD)
+                .build();
+    }
+
+    private List<Integer> entityIds(List<Event> events) {
+        return events.stream().map(Event::getEntityId).collect(Collectors.toList());
+    }
+
+    // первый пакет записывается, но вызывающий получает ошибку, как при потере ответа базы
+    private static class FailingEventStorage extends DBEventStorage {
+        private boolean failed;
+
+        private FailingEventStorage(JdbcTemplate jdbcTemplate) {
+            super(jdbcTemplate);
+        }
+
+        @Override
+        public int createAll(List<Event> events) {
+            int created = super.createAll(events);
+            if (!failed) {
+                failed = true;
+                throw new DataAccessResourceFailureException("Соединение с базой потеряно");
+            }
+            return created;
+        }
+    }
+}
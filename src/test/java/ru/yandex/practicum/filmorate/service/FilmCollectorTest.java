@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.DBFilmDirectorStorage;
+import ru.yandex.practicum.filmorate.storage.DBFilmGenreStorage;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+import ru.yandex.practicum.filmorate.storage.director.DBDirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.DBGenreStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@JdbcTest
+public class FilmCollectorTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final CountingJdbcTemplate countingJdbcTemplate;
+    private final DBFilmStorage filmStorage;
+    private final FilmCollector filmCollector;
+
+    @Autowired
+    public FilmCollectorTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        this.filmStorage = new DBFilmStorage(jdbcTemplate);
+        this.filmCollector = new FilmCollector(new DBGenreStorage(countingJdbcTemplate),
+                new DBDirectorStorage(countingJdbcTemplate),
+                new LikeWriter(new DBLikesStorage(countingJdbcTemplate), false, 100000, 500, 50));
+    }
+
+    @BeforeEach
+    public void fillFilms() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.execute("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;");
+        jdbcTemplate.execute("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1;");
+
+        DBUserStorage userStorage = new DBUserStorage(jdbcTemplate);
+        for (int i = 1; i <= 3; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, i));
+            userStorage.addUser(user);
+        }
+
+        DBDirectorStorage directorStorage = new DBDirectorStorage(jdbcTemplate);
+        directorStorage.addDirector(Director.builder().name("director 1").build());
+        directorStorage.addDirector(Director.builder().name("director 2").build());
+
+        DBFilmGenreStorage filmGenreStorage = new DBFilmGenreStorage(jdbcTemplate);
+        DBFilmDirectorStorage filmDirectorStorage = new DBFilmDirectorStorage(jdbcTemplate);
+        DBLikesStorage likesStorage = new DBLikesStorage(jdbcTemplate);
+        for (int i = 1; i <= 3; ++i) {
+            Film film = new Film();
+            film.setName("name " + i);
+            film.setDescription("description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, i));
+            film.setDuration(100);
+            film.setMpa(new Mpa(1, ""));
+            filmStorage.addFilm(film);
+        }
+
+        filmGenreStorage.addFilmGenre(1, 3);
+        filmGenreStorage.addFilmGenre(1, 1);
+        filmGenreStorage.addFilmGenre(2, 2);
+        filmDirectorStorage.addFilmDirector(1, 2);
+        filmDirectorStorage.addFilmDirector(1, 1);
+        filmDirectorStorage.addFilmDirector(3, 1);
+        likesStorage.addLike(1, Set.of(1, 2));
+        likesStorage.addLike(3, Set.of(3));
+
+        countingJdbcTemplate.queryCount = 0;
+    }
+
+    @Test
+    public void collectFilms() {
+        List<Film> films = filmCollector.collectFilms(new ArrayList<>(filmStorage.getAllFilms().values()));
+        Film film1 = films.stream().filter(film -> film.getId() == 1).findFirst().orElseThrow();
+        Film film2 = films.stream().filter(film -> film.getId() == 2).findFirst().orElseThrow();
+        Film film3 = films.stream().filter(film -> film.getId() == 3).findFirst().orElseThrow();
+
+        Assertions.assertEquals(List.of(1, 3), film1.getGenres().stream()
+                        .map(Genre::getId)
+                        .collect(Collectors.toList()),
+                "Жанры фильма заполняются неправильно");
+        Assertions.assertEquals(List.of(1, 2), film1.getDirectors().stream()
+                        .map(Director::getId)
+                        .collect(Collectors.toList()),
+                "Режиссёры фильма заполняются неправильно");
+        Assertions.assertEquals(Set.of(1, 2), film1.getUserLikes(),
+                "Лайки фильма заполняются неправильно");
+        Assertions.assertEquals(1, film2.getGenres().size(),
+                "Жанры фильма заполняются неправильно");
+        Assertions.assertTrue(film2.getDirectors().isEmpty() && film2.getUserLikes().isEmpty(),
+                "У фильма без режиссёров и лайков появились лишние данные");
+        Assertions.assertEquals(Set.of(3), film3.getUserLikes(),
+                "Лайки фильма заполняются неправильно");
+        Assertions.assertEquals(3, countingJdbcTemplate.queryCount,
+                "Количество запросов зависит от количества фильмов");
+    }
+
+    @Test
+    public void collectFilmsByChunks() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 1; i <= FilmCollector.CHUNK_SIZE + 1; ++i) {
+            Film film = new Film();
+            film.setId(i);
+            films.add(film);
+        }
+
+        filmCollector.collectFilms(films);
+
+        Assertions.assertEquals(6, countingJdbcTemplate.queryCount,
+                "Фильмы неправильно разбиваются на порции");
+        Assertions.assertEquals(Set.of(1, 2), films.get(0).getUserLikes(),
+                "Лайки фильма заполняются неправильно");
+
+        countingJdbcTemplate.queryCount = 0;
+        filmCollector.collectFilms(new ArrayList<>());
+
+        Assertions.assertEquals(0, countingJdbcTemplate.queryCount,
+                "Для пустого списка фильмов выполняются запросы");
+    }
+
+    private static class CountingJdbcTemplate extends JdbcTemplate {
+        private int queryCount;
+
+        CountingJdbcTemplate(JdbcTemplate jdbcTemplate) {
+            super(jdbcTemplate.getDataSource());
+        }
+
+        @Override
+        public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+            ++queryCount;
+            return super.query(psc, pss, rse);
+        }
+    }
+}
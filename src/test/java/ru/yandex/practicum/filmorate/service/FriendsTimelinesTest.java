@@ -0,0 +1,161 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.index.FriendshipGraph;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enumerations.EventType;
+import ru.yandex.practicum.filmorate.model.enumerations.Operation;
+import ru.yandex.practicum.filmorate.storage.DBFriendsStorage;
+import ru.yandex.practicum.filmorate.storage.feed.DBEventStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@JdbcTest
+public class FriendsTimelinesTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBEventStorage eventStorage;
+    private final DBFriendsStorage friendsStorage;
+    private EventWriter eventWriter;
+    private FriendshipGraph friendshipGraph;
+
+    @Autowired
+    public FriendsTimelinesTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventStorage = new DBEventStorage(jdbcTemplate);
+        this.friendsStorage = new DBFriendsStorage(jdbcTemplate);
+    }
+
+    @BeforeEach
+    public void fillFriends() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.update("ALTER SEQUENCE feed_event_id_seq RESTART WITH 1;");
+
+        DBUserStorage userStorage = new DBUserStorage(jdbcTemplate);
+        for (int i = 1; i <= 5; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, 1));
+            userStorage.addUser(user);
+        }
+
+        // у пользователя 2 три подписчика, у пользователя 3 - один
+        friendsStorage.addFriend(1, 2);
+        friendsStorage.addFriend(1, 3);
+        friendsStorage.addFriend(4, 2);
+        friendsStorage.addFriend(5, 2);
+
+        eventWriter = new EventWriter(eventStorage, 100, 100, 60000);
+        friendshipGraph = new FriendshipGraph(friendsStorage, 1000);
+        friendshipGraph.rebuild();
+    }
+
+    @AfterEach
+    public void shutdown() throws InterruptedException {
+        eventWriter.shutdown();
+    }
+
+    @Test
+    public void fanoutOnWriteMatchesFanoutOnRead() {
+        // события до первого чтения загружаются из базы, после - дописываются в ленту
+        createEvents(1, 10);
+
+        FriendsTimelines push = timelines(1000);
+        FriendsTimelines pull = timelines(0);
+        FriendsTimelines mixed = timelines(2);
+        Assertions.assertEquals(eventIds(pull.getTimeline(1, 100)), eventIds(push.getTimeline(1, 100)),
+                "Загруженная из базы лента расходится с лентой, собранной при чтении");
+
+        List<Event> events = createEvents(11, 30, push, pull, mixed);
+
+        List<Integer> expected = events.stream()
+                .filter(event -> event.getUserId() == 2 || event.getUserId() == 3)
+                .map(Event::getEventId)
+                .collect(Collectors.toList());
+        expected = expected.subList(expected.size() - 5, expected.size());
+
+        Assertions.assertEquals(expected, eventIds(pull.getTimeline(1, 5)),
+                "Лента, собранная при чтении, неправильная");
+        Assertions.assertEquals(expected, eventIds(push.getTimeline(1, 5)),
+                "Лента с записью событий подписчикам расходится с лентой, собранной при чтении");
+        Assertions.assertEquals(expected, eventIds(mixed.getTimeline(1, 5)),
+                "Лента с подгрузкой событий хаба расходится с лентой, собранной при чтении");
+
+        Assertions.assertEquals(0L, push.getMetrics().get("hubReads"),
+                "Лента без хабов обращается к базе при чтении");
+        Assertions.assertEquals(1L, push.getMetrics().get("builds"),
+                "Лента загружается из базы при каждом чтении");
+        Assertions.assertTrue((long) mixed.getMetrics().get("hubEvents") > 0,
+                "События хаба дописываются в ленты подписчиков");
+    }
+
+    @Test
+    public void friendsChanges() {
+        createEvents(1, 10);
+        FriendsTimelines timelines = timelines(1000);
+        timelines.getTimeline(1, 100);
+
+        friendsStorage.addFriend(1, 4);
+        friendshipGraph.addFriend(1, 4);
+        timelines.addFriend(1);
+
+        Assertions.assertEquals(List.of(2, 3, 4, 7, 8, 9), entityIds(timelines.getTimeline(1, 100)),
+                "После добавления друга в ленте нет его прошлых событий");
+
+        friendsStorage.deleteFriend(1, 2);
+        friendshipGraph.deleteFriend(1, 2);
+        timelines.deleteFriend(1, 2);
+        createEvents(11, 15, timelines);
+
+        Assertions.assertEquals(List.of(3, 4, 8, 9, 13, 14), entityIds(timelines.getTimeline(1, 100)),
+                "После удаления друга в ленте остались его события");
+
+        timelines.removeUser(3);
+        friendshipGraph.removeUser(3);
+
+        Assertions.assertEquals(List.of(4, 9, 14), entityIds(timelines.getTimeline(1, 100)),
+                "В ленте остались события удалённого пользователя");
+    }
+
+    private FriendsTimelines timelines(int fanoutThreshold) {
+        return new FriendsTimelines(eventStorage, eventWriter, friendshipGraph, 20, fanoutThreshold, 100);
+    }
+
+    // события пользователей 1..5 по очереди, entityId - номер события
+    private List<Event> createEvents(int from, int to, FriendsTimelines... timelines) {
+        List<Event> events = new ArrayList<>();
+        for (int i = from; i <= to; ++i) {
+            Event event = eventWriter.write(Event.builder()
+                    .userId((i - 1) % 5 + 1)
+                    .entityId(i)
+                    .eventType(EventType.LIKE)
+                    .operation(Operation.ADD)
+                    .build());
+            for (FriendsTimelines timeline : timelines) {
+                timeline.append(event);
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    private List<Integer> eventIds(List<Event> events) {
+        return events.stream().map(Event::getEventId).collect(Collectors.toList());
+    }
+
+    private List<Integer> entityIds(List<Event> events) {
+        return events.stream().map(Event::getEntityId).collect(Collectors.toList());
+    }
+}
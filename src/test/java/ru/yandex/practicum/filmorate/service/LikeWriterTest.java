@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.DBLikesStorage;
+import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@JdbcTest
+public class LikeWriterTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBLikesStorage likesStorage;
+    private final DBFilmStorage filmStorage;
+    private final DBUserStorage userStorage;
+
+    @Autowired
+    public LikeWriterTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.likesStorage = new DBLikesStorage(jdbcTemplate);
+        this.filmStorage = new DBFilmStorage(jdbcTemplate);
+        this.userStorage = new DBUserStorage(jdbcTemplate);
+    }
+
+    @BeforeEach
+    public void fillTables() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;");
+
+        for (int i = 1; i <= 2; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, 1));
+            userStorage.addUser(user);
+
+            Film film = new Film();
+            film.setName("name " + i);
+            film.setDescription("description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, i));
+            film.setDuration(100);
+            film.setMpa(new Mpa(1, "G"));
+            filmStorage.addFilm(film);
+        }
+    }
+
+    @Test
+    public void coalesceAndReadOwnWrites() throws InterruptedException {
+        LikeWriter likeWriter = new LikeWriter(likesStorage, true, 1000, 1000, 60000);
+        likesStorage.addLike(1, 2);
+
+        likeWriter.addLike(1, 1);
+        likeWriter.addLike(2, 1);
+        likeWriter.removeLike(1, 1);
+        likeWriter.removeLike(1, 2);
+
+        Assertions.assertEquals(2, likeWriter.getMetrics().get("pending"),
+                "Лайк и его отмена не уничтожились в буфере");
+        Assertions.assertEquals(Map.of(1, Set.of(2), 2, Set.of()), likeWriter.getLikes(films()),
+                "Незаписанные изменения лайков не видны при чтении");
+        Assertions.assertEquals(Set.of(1), likesStorage.getLikes(2),
+                "Изменение лайков записано в базу до сброса буфера");
+
+        likeWriter.flush();
+
+        Assertions.assertEquals(Map.of(1, Set.of(2), 2, Set.of()), likesStorage.getLikes(films()),
+                "Лайки записаны в базу неправильно");
+        Assertions.assertTrue(likesStorage.getLikesCountDrift().isEmpty(),
+                "Счётчики лайков не пересчитаны после записи");
+        Assertions.assertEquals(0, likeWriter.getMetrics().get("pending"),
+                "Записанные изменения остались в буфере");
+
+        likeWriter.shutdown();
+    }
+
+    @Test
+    public void skipUnchangedLikes() throws InterruptedException {
+        LikeWriter likeWriter = new LikeWriter(likesStorage, true, 1000, 1000, 60000);
+        likesStorage.addLike(1, 2);
+
+        Assertions.assertFalse(likeWriter.addLike(1, 2), "Повторный лайк из базы попал в буфер");
+        Assertions.assertFalse(likeWriter.removeLike(2, 2), "Отмена несуществующего лайка попала в буфер");
+        Assertions.assertTrue(likeWriter.addLike(2, 1), "Новый лайк не попал в буфер");
+        Assertions.assertFalse(likeWriter.addLike(2, 1), "Повторный лайк из буфера попал в буфер");
+        Assertions.assertThrows(UpdateNonExistObjectException.class, () -> likeWriter.addLike(1, 99),
+                "Лайк несуществующему фильму не вызывает ошибку");
+        Assertions.assertEquals(1, likeWriter.getMetrics().get("pending"),
+                "В буфере остались неизменяющие лайки");
+
+        likeWriter.shutdown();
+    }
+
+    @Test
+    public void keepLikesWhenWriteFails() throws InterruptedException {
+        FailingLikesStorage failingStorage = new FailingLikesStorage(jdbcTemplate);
+        LikeWriter likeWriter = new LikeWriter(failingStorage, true, 1000, 1000, 60000);
+
+        likeWriter.addLike(1, 1);
+        likeWriter.flush();
+
+        Assertions.assertEquals(1L, likeWriter.getMetrics().get("failedBatches"),
+                "Ошибка записи пакета не учтена");
+        Assertions.assertEquals(Set.of(1), likeWriter.getLikes(films()).get(1),
+                "Лайк из незаписанного пакета пропал из буфера");
+
+        likeWriter.flush();
+
+        Assertions.assertEquals(Set.of(1), likesStorage.getLikes(1),
+                "Лайк из незаписанного пакета не записан при следующем сбросе");
+        likeWriter.shutdown();
+    }
+
+    @Test
+    public void shutdownWritesRemainingLikes() throws InterruptedException {
+        LikeWriter likeWriter = new LikeWriter(likesStorage, true, 1000, 1000, 60000);
+
+        likeWriter.addLike(1, 1);
+        likeWriter.addLike(2, 1);
+        likeWriter.addLike(2, 2);
+        // лайки удалённого до записи пользователя пропускаются
+        userStorage.deleteUser(2);
+        likeWriter.shutdown();
+
+        Assertions.assertEquals(Map.of(1, Set.of(1), 2, Set.of()), likesStorage.getLikes(films()),
+                "При остановке записаны не все лайки");
+        Assertions.assertEquals(0, likeWriter.getMetrics().get("pending"),
+                "После остановки в буфере остались лайки");
+    }
+
+    private List<Film> films() {
+        return List.of(filmStorage.getFilm(1), filmStorage.getFilm(2));
+    }
+
+    private static class FailingLikesStorage extends DBLikesStorage {
+        private boolean failed;
+
+        private FailingLikesStorage(JdbcTemplate jdbcTemplate) {
+            super(jdbcTemplate);
+        }
+
+        @Override
+        public void applyLikes(List<int[]> added, List<int[]> removed) {
+            if (!failed) {
+                failed = true;
+                throw new DataAccessResourceFailureException("База недоступна");
+            }
+            super.applyLikes(added, removed);
+        }
+    }
+}
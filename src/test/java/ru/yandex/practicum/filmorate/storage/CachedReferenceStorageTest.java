@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.director.CachedDirectorStorage;
+import ru.yandex.practicum.filmorate.storage.director.DBDirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.CachedGenreStorage;
+import ru.yandex.practicum.filmorate.storage.genre.DBGenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.CachedMpaStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.DBMpaStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+@JdbcTest
+public class CachedReferenceStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBFilmStorage filmStorage;
+    private final DBGenreStorage dbGenreStorage;
+    private final DBDirectorStorage dbDirectorStorage;
+    private final CachedGenreStorage genreStorage;
+    private final CachedMpaStorage mpaStorage;
+    private final CachedDirectorStorage directorStorage;
+
+    @Autowired
+    public CachedReferenceStorageTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.filmStorage = new DBFilmStorage(jdbcTemplate);
+        this.dbGenreStorage = new DBGenreStorage(jdbcTemplate);
+        this.dbDirectorStorage = new DBDirectorStorage(jdbcTemplate);
+        this.genreStorage = new CachedGenreStorage(dbGenreStorage, new DBFilmGenreStorage(jdbcTemplate));
+        this.mpaStorage = new CachedMpaStorage(new DBMpaStorage(jdbcTemplate));
+        this.directorStorage = new CachedDirectorStorage(dbDirectorStorage, new DBFilmDirectorStorage(jdbcTemplate));
+    }
+
+    @BeforeEach
+    public void fillFilms() {
+        jdbcTemplate.execute("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;");
+        jdbcTemplate.execute("ALTER TABLE directors ALTER COLUMN director_id RESTART WITH 1;");
+
+        dbDirectorStorage.addDirector(Director.builder().name("director 1").build());
+        dbDirectorStorage.addDirector(Director.builder().name("director 2").build());
+
+        for (int i = 1; i <= 3; ++i) {
+            Film film = new Film();
+            film.setName("name " + i);
+            film.setDescription("description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, i));
+            film.setDuration(100);
+            film.setMpa(new Mpa(1, ""));
+            filmStorage.addFilm(film);
+        }
+
+        DBFilmGenreStorage filmGenreStorage = new DBFilmGenreStorage(jdbcTemplate);
+        DBFilmDirectorStorage filmDirectorStorage = new DBFilmDirectorStorage(jdbcTemplate);
+        filmGenreStorage.addFilmGenre(1, 3);
+        filmGenreStorage.addFilmGenre(1, 1);
+        filmGenreStorage.addFilmGenre(2, 2);
+        filmDirectorStorage.addFilmDirector(1, 2);
+        filmDirectorStorage.addFilmDirector(1, 1);
+        filmDirectorStorage.addFilmDirector(3, 1);
+
+        genreStorage.preload();
+        mpaStorage.preload();
+        directorStorage.preload();
+    }
+
+    @Test
+    public void referenceDataMatchesDatabase() {
+        List<Film> films = new ArrayList<>(filmStorage.getAllFilms().values());
+
+        Assertions.assertEquals(dbGenreStorage.getGenreByFilm(films), genreStorage.getGenreByFilm(films),
+                "Жанры фильмов из кэша расходятся с базой");
+        Assertions.assertEquals(dbDirectorStorage.getDirectorByFilm(films), directorStorage.getDirectorByFilm(films),
+                "Режиссёры фильмов из кэша расходятся с базой");
+        Assertions.assertEquals(dbGenreStorage.getAllGenres(), genreStorage.getAllGenres(),
+                "Все жанры из кэша расходятся с базой");
+        Assertions.assertEquals(new DBMpaStorage(jdbcTemplate).getAllMpa(), mpaStorage.getAllMpa(),
+                "Все рейтинги из кэша расходятся с базой");
+        Assertions.assertEquals("PG-13", mpaStorage.getMpa(3).getName(),
+                "Рейтинг с указанным id возвращается неправильно");
+
+        Assertions.assertEquals(0L, genreStorage.getMetrics().get("misses"),
+                "Предзагруженные жанры читаются из базы");
+        Assertions.assertEquals(0L, directorStorage.getMetrics().get("misses"),
+                "Предзагруженные режиссёры читаются из базы");
+        Assertions.assertThrows(UpdateNonExistObjectException.class,
+                () -> genreStorage.getGenre(100),
+                "Для несуществующего жанра ожидалось UpdateNonExistObjectException");
+    }
+
+    @Test
+    public void directorWritesUpdateCache() {
+        Director added = directorStorage.addDirector(Director.builder().name("director 3").build());
+        directorStorage.updateDirector(Director.builder().id(1).name("renamed").build());
+        directorStorage.deleteDirector(2);
+
+        Assertions.assertEquals(dbDirectorStorage.getAllDirectors(), directorStorage.getAllDirectors(),
+                "Режиссёры из кэша не обновляются после изменений");
+        Assertions.assertEquals("renamed", directorStorage.getDirector(1).getName(),
+                "Кэш не обновляется после изменения режиссёра");
+        Assertions.assertEquals(added, directorStorage.getDirector(added.getId()),
+                "Добавленный режиссёр не попадает в кэш");
+        Assertions.assertThrows(UpdateNonExistObjectException.class,
+                () -> directorStorage.getDirector(2),
+                "Удалённый режиссёр остался в кэше");
+
+        // режиссёр, добавленный в обход кэша, читается из базы один раз
+        Director direct = dbDirectorStorage.addDirector(Director.builder().name("director 4").build());
+        directorStorage.getDirector(direct.getId());
+        directorStorage.getDirector(direct.getId());
+
+        Assertions.assertEquals(2L, directorStorage.getMetrics().get("misses"),
+                "Режиссёр, прочитанный из базы, не сохраняется в кэше");
+    }
+}
@@ -0,0 +1,116 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.CachedUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+
+@JdbcTest
+public class CachedUserStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBUserStorage dbUserStorage;
+    private final CachedUserStorage userStorage;
+
+    @Autowired
+    public CachedUserStorageTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dbUserStorage = new DBUserStorage(jdbcTemplate);
+        this.userStorage = new CachedUserStorage(dbUserStorage, 2);
+    }
+
+    @BeforeEach
+    public void fillUsers() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        for (int i = 1; i <= 3; ++i) {
+            dbUserStorage.addUser(createUser(i));
+        }
+        userStorage.preload();
+    }
+
+    @Test
+    public void existenceChecksWithoutQueries() {
+        userStorage.checkExistsUser(1);
+        userStorage.checkExistsUser(3);
+        Assertions.assertTrue(userStorage.existsUser(2), "Существующий пользователь не найден");
+        Assertions.assertFalse(userStorage.existsUser(4), "Найден несуществующий пользователь");
+        Assertions.assertThrows(UpdateNonExistObjectException.class,
+                () -> userStorage.checkExistsUser(-1),
+                "Для несуществующего пользователя ожидалось UpdateNonExistObjectException");
+
+        Assertions.assertEquals(2L, userStorage.getMetrics().get("existsQueries"),
+                "Проверка существующих пользователей обращается к базе");
+
+        User added = userStorage.addUser(createUser(4));
+        userStorage.deleteUser(1);
+        // пользователь, добавленный в обход кэша, находится запросом к базе
+        dbUserStorage.addUser(createUser(5));
+
+        Assertions.assertTrue(userStorage.existsUser(added.getId()), "Добавленный пользователь не найден");
+        Assertions.assertFalse(userStorage.existsUser(1), "Найден удалённый пользователь");
+        Assertions.assertTrue(userStorage.existsUser(5), "Пользователь, добавленный в обход кэша, не найден");
+        Assertions.assertEquals(dbUserStorage.getUserIds(), userStorage.getUserIds(),
+                "Id пользователей в кэше расходятся с базой");
+    }
+
+    @Test
+    public void deleteDuringExistenceQuery() {
+        CachedUserStorage[] cache = new CachedUserStorage[1];
+        // пользователь удаляется после того, как запрос к базе его нашёл, но до записи id в карту
+        DBUserStorage racingStorage = new DBUserStorage(jdbcTemplate) {
+            @Override
+            public boolean existsUser(int userId) {
+                boolean exists = super.existsUser(userId);
+                cache[0].deleteUser(userId);
+                return exists;
+            }
+        };
+        cache[0] = new CachedUserStorage(racingStorage, 2);
+        cache[0].preload();
+        dbUserStorage.addUser(createUser(4));
+
+        Assertions.assertTrue(cache[0].existsUser(4), "Пользователь, найденный запросом, не возвращён");
+        Assertions.assertFalse(cache[0].getUserIds().contains(4),
+                "Пользователь, удалённый во время запроса, остался в карте id");
+    }
+
+    @Test
+    public void cachesUsers() {
+        User user = userStorage.getUser(1);
+        user.setName("changed");
+        userStorage.getUser(2);
+        userStorage.getUser(1);
+        userStorage.getUser(3);
+
+        Assertions.assertEquals("name 1", userStorage.getUser(1).getName(),
+                "Изменение полученного пользователя меняет кэш");
+        Assertions.assertEquals(2L, userStorage.getMetrics().get("hits"),
+                "Пользователи из кэша читаются из базы");
+
+        User updated = createUser(1);
+        updated.setId(1);
+        updated.setName("updated");
+        userStorage.updateUser(updated);
+
+        Assertions.assertEquals("updated", userStorage.getUser(1).getName(),
+                "Кэш не обновляется после изменения пользователя");
+        Assertions.assertEquals(2, userStorage.getMetrics().get("size"),
+                "Размер кэша превышает максимальный");
+    }
+
+    private User createUser(int i) {
+        User user = new User();
+        user.setEmail("e" + i + "@mail.ru");
+        user.setLogin("login" + i);
+        user.setName("name " + i);
+        user.setBirthday(LocalDate.of(2000, 1, i));
+        return user;
+    }
+}
@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enumerations.EventType;
+import ru.yandex.practicum.filmorate.model.enumerations.Operation;
+import ru.yandex.practicum.filmorate.storage.feed.DBEventStorage;
+import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@JdbcTest
+public class DBEventStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final DBEventStorage eventStorage;
+
+    @Autowired
+    public DBEventStorageTest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventStorage = new DBEventStorage(jdbcTemplate);
+    }
+
+    @BeforeEach
+    public void fillFeed() {
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.update("ALTER SEQUENCE feed_event_id_seq RESTART WITH 1;");
+
+        DBUserStorage userStorage = new DBUserStorage(jdbcTemplate);
+        for (int i = 1; i <= 2; ++i) {
+            User user = new User();
+            user.setEmail("e" + i + "@mail.ru");
+            user.setLogin("login" + i);
+            user.setName("name " + i);
+            user.setBirthday(LocalDate.of(2000, 1, 1));
+            userStorage.addUser(user);
+        }
+
+        // события пользователей перемешаны: у пользователя 1 нечётные event_id, у пользователя 2 - чётные
+        int[] eventIds = eventStorage.nextEventIds(10);
+        List<Event> events = new ArrayList<>();
+        for (int i = 1; i <= 10; ++i) {
+            events.add(Event.builder()
+                    .eventId(eventIds[i - 1])
+                    .timestamp(System.currentTimeMillis())
+                    .userId(2 - i % 2)
+                    .entityId(i)
+                    .eventType(EventType.values()[i % EventType.values().length])
+                    .operation(Operation.values()[i % Operation.values().length])
+                    .build());
+        }
+        eventStorage.createAll(events);
+    }
+
+    @Test
+    public void eventIdsSharedWithDatabaseInserts() {
+        jdbcTemplate.update("INSERT INTO feed (user_id, event_type_id, operation_id, entity_id) VALUES (1, 1, 1, 11);");
+
+        Assertions.assertEquals(List.of(9, 11), eventIds(eventStorage.getByUserId(1, 7, 10)),
+                "Вставка без id получила id, пересекающийся с выделенными для событий");
+        Assertions.assertArrayEquals(new int[]{12, 13}, eventStorage.nextEventIds(2),
+                "Id событий выделяются не из общей последовательности");
+    }
+
+    @Test
+    public void getByUserId() {
+        List<Event> page = eventStorage.getByUserId(1, 0, 2);
+
+        Assertions.assertEquals(List.of(1, 3), eventIds(page),
+                "Первая страница ленты событий получена неправильно");
+        Assertions.assertEquals(EventType.REVIEW, page.get(0).getEventType(),
+                "Тип события прочитан неправильно");
+        Assertions.assertEquals(Operation.ADD, page.get(0).getOperation(),
+                "Операция события прочитана неправильно");
+        Assertions.assertEquals(1, page.get(0).getEntityId(),
+                "Сущность события прочитана неправильно");
+
+        Assertions.assertEquals(List.of(5, 7), eventIds(eventStorage.getByUserId(1, 3, 2)),
+                "Страница ленты событий после курсора получена неправильно");
+        Assertions.assertEquals(List.of(9), eventIds(eventStorage.getByUserId(1, 7, 2)),
+                "Последняя страница ленты событий получена неправильно");
+        Assertions.assertEquals(List.of(), eventStorage.getByUserId(1, 9, 2),
+                "После последнего события лента должна быть пустой");
+    }
+
+    @Test
+    public void pagesMatchFullFeed() {
+        List<Event> pages = new ArrayList<>();
+        int after = 0;
+        List<Event> page;
+        while (!(page = eventStorage.getByUserId(2, after, 3)).isEmpty()) {
+            pages.addAll(page);
+            after = page.get(page.size() - 1).getEventId();
+        }
+
+        Assertions.assertEquals(eventStorage.getByUserId(2, 0, 100), pages,
+                "Постраничная лента событий расходится с полной");
+    }
+
+    private List<Integer> eventIds(List<Event> events) {
+        return events.stream().map(Event::getEventId).collect(Collectors.toList());
+    }
+}
@@ -13,7 +13,12 @@ import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.film.DBFilmStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @JdbcTest
 public class DBFilmStorageTest {
@@ -79,6 +84,53 @@ public class DBFilmStorageTest {
                 "Возвращается неправильное количество фильмов");
     }
 
+    @Test
+    public void forEachFilm() {
+        fillFilms();
+        List<Film> films = new ArrayList<>();
+
+        filmStorage.forEachFilm(films::add);
+
+        Assertions.assertEquals(new ArrayList<>(new TreeMap<>(filmStorage.getAllFilms()).values()), films,
+                "Фильмы передаются не все или не по возрастанию id");
+    }
+
+    @Test
+    public void getFilmsPage() {
+        fillFilms();
+
+        Assertions.assertEquals(List.of(6, 7, 8), filmStorage.getFilmsPage(5, 3).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Возвращается неправильная страница фильмов");
+        Assertions.assertEquals(List.of(20), filmStorage.getFilmsPage(19, 3).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Возвращается неправильная последняя страница фильмов");
+    }
+
+    @Test
+    public void addFilms() {
+        filmStorage.addFilm(standardFilm());
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES " +
+                "('e1@mail.ru', 'login1', 'name 1', '2000-01-01'), ('e2@mail.ru', 'login2', 'name 2', '2000-01-02');");
+        Film liked = createFilm(0, "name 2", null, 2000, 1, 2, 100, new Mpa(2, "PG"));
+        liked.setUserLikes(Set.of(1, 2));
+        Film film = createFilm(0, "name 3", "description 3", 2000, 1, 3, 100, new Mpa(1, "G"));
+
+        filmStorage.addFilms(List.of(liked, film));
+        new DBLikesStorage(jdbcTemplate).addFilmsLikes(List.of(liked, film));
+
+        Assertions.assertEquals(List.of(2, 3), List.of(liked.getId(), film.getId()),
+                "Добавленным фильмам назначены неправильные id");
+        Assertions.assertEquals("", filmStorage.getFilm(2).getDescription(),
+                "Необязательные поля добавленного фильма не заполнены");
+        Assertions.assertEquals(2, (int) jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = ?;",
+                        Integer.class, 2),
+                "Количество лайков добавленных фильмов не сохранено");
+    }
+
     @Test
     public void getExistFilm() {
         filmStorage.addFilm(standardFilm());
@@ -177,6 +229,52 @@ public class DBFilmStorageTest {
                 "Фильм неправильно удаляется");
     }
 
+    @Test
+    public void deleteFilmWithDependentRows() {
+        filmStorage.addFilm(standardFilm());
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES " +
+                "('e1@mail.ru', 'login1', 'name 1', '2000-01-01'), ('e2@mail.ru', 'login2', 'name 2', '2000-01-02');");
+        jdbcTemplate.update("INSERT INTO directors (name) VALUES ('director');");
+        int directorId = jdbcTemplate.queryForObject("SELECT MAX(director_id) FROM directors;", Integer.class);
+        jdbcTemplate.update("INSERT INTO film_genres (film_id, genre_id) VALUES (1, 1), (1, 2);");
+        jdbcTemplate.update("INSERT INTO film_directors (film_id, director_id) VALUES (1, ?);", directorId);
+        jdbcTemplate.update("INSERT INTO likes (user_id, film_id) VALUES (1, 1), (2, 1);");
+        jdbcTemplate.update("INSERT INTO reviews (content, is_positive, user_id, film_id) " +
+                "VALUES ('review', TRUE, 1, 1);");
+        jdbcTemplate.update("INSERT INTO review_user_likes (review_id, user_id, is_positive) " +
+                "SELECT review_id, 2, 1 FROM reviews;");
+
+        filmStorage.deleteFilm(1);
+
+        for (String table : List.of("film_genres", "film_directors", "likes", "reviews", "review_user_likes")) {
+            Assertions.assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + ";",
+                    Integer.class), "После удаления фильма остались строки в " + table);
+        }
+    }
+
+    @Test
+    public void countLikes() {
+        fillFilms();
+        jdbcTemplate.update("ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;");
+        for (int i = 1; i <= 3; ++i) {
+            jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?);",
+                    "e" + i + "@mail.ru", "login" + i, "name " + i, LocalDate.of(2000, 1, i));
+        }
+        DBLikesStorage likesStorage = new DBLikesStorage(jdbcTemplate);
+        likesStorage.addLike(1, 7);
+        likesStorage.addLike(2, 7);
+        likesStorage.addLike(3, 7);
+        likesStorage.addLike(1, 15);
+        likesStorage.addLike(1, 3);
+
+        List<Integer> filmIds = jdbcTemplate.queryForList("SELECT film_id FROM films "
+                + "ORDER BY likes_count DESC, film_id LIMIT 4;", Integer.class);
+
+        Assertions.assertEquals(List.of(7, 3, 15, 1), filmIds,
+                "Количество лайков фильмов считается неправильно");
+    }
+
     @Test
     public void deleteNonExistFilm() {
         Assertions.assertThrows(UpdateNonExistObjectException.class,
@@ -10,6 +10,8 @@ import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @JdbcTest
 public class DBFriendsStorageTest {
@@ -70,6 +72,16 @@ public class DBFriendsStorageTest {
                 "Все друзья указанного пользователя возвращаются неправильно");
     }
 
+    @Test
+    public void getFriendUsers() {
+        Assertions.assertEquals(List.of(2, 3, 4), userIds(friendsStorage.getFriendUsers(1)),
+                "Друзья указанного пользователя возвращаются неправильно");
+        Assertions.assertEquals("login2", friendsStorage.getFriendUsers(1).get(0).getLogin(),
+                "Друзья указанного пользователя возвращаются неправильно");
+        Assertions.assertEquals(List.of(), friendsStorage.getFriendUsers(10),
+                "У пользователя без друзей возвращаются друзья");
+    }
+
     @Test
     public void addFriend() {
         friendsStorage.addFriend(1, 10);
@@ -106,4 +118,8 @@ public class DBFriendsStorageTest {
         Assertions.assertEquals(0, friendsStorage.getFriends(1).size(),
                 "Дрзья указанного пользователя удаляются непрвильно");
     }
+
+    private List<Integer> userIds(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
 }
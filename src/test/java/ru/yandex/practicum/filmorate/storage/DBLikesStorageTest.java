@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.exceptions.UpdateNonExistObjectException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
@@ -14,6 +15,8 @@ import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
 
 import java.time.LocalDate;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 @JdbcTest
 public class DBLikesStorageTest {
@@ -140,4 +143,94 @@ public class DBLikesStorageTest {
         Assertions.assertEquals(0, likesStorage.getLikes(1).size(),
                 "Все лайки указанного фильма удаляются неправильно");
     }
+
+    @Test
+    public void repairLikesCount() {
+        Map<Integer, int[]> drift = likesStorage.getLikesCountDrift();
+
+        Assertions.assertEquals(Set.of(1, 2, 3, 4), drift.keySet(),
+                "Расхождение счётчиков лайков определяется неправильно");
+        Assertions.assertEquals(0, drift.get(1)[0],
+                "Расхождение счётчиков лайков определяется неправильно");
+        Assertions.assertEquals(3, drift.get(1)[1],
+                "Расхождение счётчиков лайков определяется неправильно");
+        Assertions.assertEquals(4, likesStorage.repairLikesCount(),
+                "Счётчики лайков исправляются неправильно");
+        Assertions.assertTrue(likesStorage.getLikesCountDrift().isEmpty(),
+                "Счётчики лайков исправляются неправильно");
+        Assertions.assertEquals(3, getLikesCount(1),
+                "Счётчики лайков исправляются неправильно");
+        Assertions.assertEquals(0, getLikesCount(5),
+                "Счётчики лайков исправляются неправильно");
+    }
+
+    @Test
+    public void likesCountFollowsLikes() {
+        likesStorage.repairLikesCount();
+
+        likesStorage.addLike(5, 1);
+        Assertions.assertEquals(4, getLikesCount(1),
+                "Счётчик лайков не увеличивается при добавлении лайка");
+
+        likesStorage.deleteLike(5, 1);
+        likesStorage.deleteLike(5, 1);
+        Assertions.assertEquals(3, getLikesCount(1),
+                "Счётчик лайков неправильно уменьшается при удалении лайка");
+
+        likesStorage.deleteUserLikes(1);
+        Assertions.assertEquals(2, getLikesCount(1),
+                "Счётчик лайков неправильно уменьшается при удалении лайков пользователя");
+        Assertions.assertEquals(2, getLikesCount(4),
+                "Счётчик лайков неправильно уменьшается при удалении лайков пользователя");
+
+        likesStorage.deleteFilmLikes(2);
+        Assertions.assertEquals(0, getLikesCount(2),
+                "Счётчик лайков не обнуляется при удалении лайков фильма");
+
+        likesStorage.addLike(2, Set.of(1, 2));
+        Assertions.assertEquals(2, getLikesCount(2),
+                "Счётчик лайков неправильно пересчитывается при добавлении нескольких лайков");
+        Assertions.assertTrue(likesStorage.getLikesCountDrift().isEmpty(),
+                "Счётчики лайков расходятся с таблицей likes");
+    }
+
+    @Test
+    public void addLikeIfAbsent() {
+        likesStorage.repairLikesCount();
+
+        Assertions.assertTrue(likesStorage.addLikeIfAbsent(5, 1),
+                "Новый лайк не добавлен");
+        Assertions.assertFalse(likesStorage.addLikeIfAbsent(5, 1),
+                "Повторный лайк добавлен");
+        Assertions.assertEquals(4, getLikesCount(1),
+                "Счётчик лайков увеличен повторным лайком");
+        UpdateNonExistObjectException exception = Assertions.assertThrows(UpdateNonExistObjectException.class,
+                () -> likesStorage.addLikeIfAbsent(5, 99),
+                "Лайк несуществующему фильму не вызывает ошибку");
+        Assertions.assertTrue(exception.getMessage().startsWith("Film"),
+                "В ошибке указан не фильм: " + exception.getMessage());
+        exception = Assertions.assertThrows(UpdateNonExistObjectException.class,
+                () -> likesStorage.addLikeIfAbsent(99, 1),
+                "Лайк несуществующего пользователя не вызывает ошибку");
+        Assertions.assertTrue(exception.getMessage().startsWith("User"),
+                "В ошибке указан не пользователь: " + exception.getMessage());
+
+        Assertions.assertTrue(likesStorage.deleteLike(5, 1),
+                "Существующий лайк не удалён");
+        Assertions.assertFalse(likesStorage.deleteLike(5, 1),
+                "Удаление несуществующего лайка не определяется");
+
+        Assertions.assertEquals(Boolean.TRUE, likesStorage.findLike(1, 1),
+                "Существующий лайк не найден");
+        Assertions.assertEquals(Boolean.FALSE, likesStorage.findLike(5, 1),
+                "Найден несуществующий лайк");
+        Assertions.assertNull(likesStorage.findLike(1, 99),
+                "Найден лайк несуществующего фильма");
+        Assertions.assertTrue(likesStorage.getLikesCountDrift().isEmpty(),
+                "Счётчики лайков расходятся с таблицей likes");
+    }
+
+    private int getLikesCount(int filmId) {
+        return jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = ?;", Integer.class, filmId);
+    }
 }
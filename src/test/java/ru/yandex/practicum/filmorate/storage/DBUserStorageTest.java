@@ -12,8 +12,13 @@ import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.DBUserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @JdbcTest
 public class DBUserStorageTest {
@@ -25,6 +30,8 @@ public class DBUserStorageTest {
     public DBUserStorageTest(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
         this.userStorage = new DBUserStorage(jdbcTemplate);
+        // уникальные индексы users создаёт миграция
+        new DBSchemaMigration(jdbcTemplate).migrate();
     }
 
     @BeforeEach
@@ -65,6 +72,29 @@ public class DBUserStorageTest {
         }
     }
 
+    @Test
+    public void migrationFailsOnDuplicates() {
+        // база прежней версии: индекса нет, а email повторяется
+        jdbcTemplate.execute("DROP INDEX IF EXISTS users_email_uq;");
+        jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES "
+                + "('e1@mail.ru', 'login1', 'name 1', '2000-01-01'), ('e1@mail.ru', 'login2', 'name 2', '2000-01-02');");
+
+        IllegalStateException exception = Assertions.assertThrows(IllegalStateException.class,
+                () -> new DBSchemaMigration(jdbcTemplate).migrate(),
+                "Миграция не останавливает запуск при дубликатах email");
+        Assertions.assertTrue(exception.getMessage().contains("(e1@mail.ru) у строк с user_id = 1, 2"),
+                "Повторяющиеся строки не перечислены в ошибке: " + exception.getMessage());
+
+        // CREATE INDEX фиксирует транзакцию теста, поэтому строки удаляются до миграции
+        jdbcTemplate.update("DELETE FROM users;");
+        new DBSchemaMigration(jdbcTemplate).migrate();
+
+        userStorage.addUser(createUser(0, "e1@mail.ru", "login1", "name 1", 2000, 1, 1));
+        Assertions.assertThrows(AddExistObjectException.class,
+                () -> userStorage.addUser(createUser(0, "e1@mail.ru", "login3", "name 3", 2000, 1, 3)),
+                "Индекс не создан после исправления дубликатов");
+    }
+
     @Test
     public void getAllUsersEmpty() {
         Assertions.assertEquals(new HashMap<>(), userStorage.getAllUsers(),
@@ -79,6 +109,43 @@ public class DBUserStorageTest {
                 "Возвращается неправильное количество пользователей");
     }
 
+    @Test
+    public void forEachUser() {
+        fillUsers();
+        List<User> users = new ArrayList<>();
+
+        userStorage.forEachUser(users::add);
+
+        Assertions.assertEquals(new ArrayList<>(new TreeMap<>(userStorage.getAllUsers()).values()), users,
+                "Пользователи передаются не все или не по возрастанию id");
+    }
+
+    @Test
+    public void getUsersPage() {
+        fillUsers();
+
+        Assertions.assertEquals(List.of(1, 2), userStorage.getUsersPage(0, 2).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "Возвращается неправильная первая страница пользователей");
+        Assertions.assertEquals(List.of(), userStorage.getUsersPage(20, 2),
+                "После последнего пользователя возвращается непустая страница");
+    }
+
+    @Test
+    public void getUsers() {
+        fillUsers();
+
+        Assertions.assertEquals(List.of(3, 7, 20), userStorage.getUsers(Set.of(20, 3, 7, 25)).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "Пользователи по списку id возвращаются неправильно");
+        Assertions.assertEquals("loginn7", userStorage.getUsers(List.of(7)).get(0).getLogin(),
+                "Пользователи по списку id возвращаются неправильно");
+        Assertions.assertEquals(List.of(), userStorage.getUsers(List.of()),
+                "По пустому списку id возвращаются пользователи");
+    }
+
     @Test
     public void getExistUser() {
         userStorage.addUser(standardUser());
@@ -94,6 +161,21 @@ public class DBUserStorageTest {
                 "при добавлении пользователя ожидалось UpdateNonExistObjectException");
     }
 
+    @Test
+    public void existsUser() {
+        fillUsers();
+
+        Assertions.assertTrue(userStorage.existsUser(20),
+                "Существующий пользователь не найден");
+        Assertions.assertFalse(userStorage.existsUser(21),
+                "Найден несуществующий пользователь");
+        Assertions.assertThrows(UpdateNonExistObjectException.class,
+                () -> userStorage.checkExistsUser(21),
+                "Для несуществующего пользователя ожидалось UpdateNonExistObjectException");
+        Assertions.assertEquals(20, userStorage.getUserIds().size(),
+                "Возвращается неправильное количество id пользователей");
+    }
+
     @Test
     public void addFirstUser() {
 
@@ -128,6 +210,20 @@ public class DBUserStorageTest {
                 "При добавлнении пользователя ожидалось AddExistObjectException");
     }
 
+    @Test
+    public void addUsers() {
+        userStorage.addUser(standardUser());
+        User withoutName = createUser(0, "e2@mail.ru", "login2", null, 2000, 1, 2);
+        User user = createUser(0, "e3@mail.ru", "login3", "name 3", 2000, 1, 3);
+
+        userStorage.addUsers(List.of(withoutName, user));
+
+        Assertions.assertEquals(List.of(2, 3), List.of(withoutName.getId(), user.getId()),
+                "Добавленным пользователям назначены неправильные id");
+        Assertions.assertEquals("login2", userStorage.getUser(2).getName(),
+                "Имя добавленного пользователя без имени не заменено логином");
+    }
+
     @Test
     public void addUserWithoutOptionalParameters() {
         User user = standardUserNotNullFriends();
@@ -162,6 +258,20 @@ public class DBUserStorageTest {
                 "Пользователь неправильно обновляется");
     }
 
+    @Test
+    public void updateUserToDuplicate() {
+        fillUsers();
+        User user = createUser(1, "em2@mail.ru", "loginn1", "name 1", 2000, 1, 1);
+
+        AddExistObjectException exception = Assertions.assertThrows(AddExistObjectException.class,
+                () -> userStorage.updateUser(user),
+                "При изменении email на занятый ожидалось AddExistObjectException");
+        Assertions.assertEquals("Этот email уже занят email = em2@mail.ru", exception.getMessage(),
+                "Занятое поле определяется неправильно");
+        Assertions.assertEquals("em1@mail.ru", userStorage.getUser(1).getEmail(),
+                "Пользователь изменён, несмотря на занятый email");
+    }
+
     @Test
     public void updateNonExistUser() {
         Assertions.assertThrows(UpdateNonExistObjectException.class,
@@ -178,6 +288,38 @@ public class DBUserStorageTest {
                 "Пользователь неправильно удаляется");
     }
 
+    @Test
+    public void deleteUserWithDependentRows() {
+        fillUsers();
+        jdbcTemplate.update("INSERT INTO films (name, description, release_date, duration, mpa_id, likes_count) " +
+                "VALUES ('name', 'description', '2000-01-01', 100, 1, 2);");
+        int filmId = jdbcTemplate.queryForObject("SELECT MAX(film_id) FROM films;", Integer.class);
+        jdbcTemplate.update("INSERT INTO friends (user_id, friend_id) VALUES (1, 2), (2, 1);");
+        jdbcTemplate.update("INSERT INTO likes (user_id, film_id) VALUES (1, ?), (2, ?);", filmId, filmId);
+        jdbcTemplate.update("INSERT INTO reviews (content, is_positive, user_id, film_id) " +
+                "VALUES ('review 1', TRUE, 1, ?), ('review 2', TRUE, 2, ?);", filmId, filmId);
+        jdbcTemplate.update("INSERT INTO review_user_likes (review_id, user_id, is_positive) " +
+                "SELECT review_id, 3 - user_id, 1 FROM reviews;");
+        jdbcTemplate.update("INSERT INTO feed (user_id, event_type_id, operation_id, entity_id) VALUES (1, 1, 2, ?);",
+                filmId);
+
+        userStorage.deleteUser(1);
+
+        Assertions.assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friends " +
+                        "WHERE user_id = 1 OR friend_id = 1;", Integer.class),
+                "После удаления пользователя остались его друзья");
+        Assertions.assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed WHERE user_id = 1;",
+                Integer.class), "После удаления пользователя осталась его лента");
+        Assertions.assertEquals(List.of(2), jdbcTemplate.queryForList("SELECT user_id FROM likes;", Integer.class),
+                "После удаления пользователя остались его лайки");
+        Assertions.assertEquals(List.of(2), jdbcTemplate.queryForList("SELECT user_id FROM reviews;", Integer.class),
+                "После удаления пользователя остались его отзывы");
+        Assertions.assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM review_user_likes;",
+                Integer.class), "После удаления пользователя остались оценки отзывов");
+        Assertions.assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = ?;",
+                Integer.class, filmId), "Счётчик лайков не уменьшен после удаления пользователя");
+    }
+
     @Test
     public void deleteNonExistUser() {
         Assertions.assertThrows(UpdateNonExistObjectException.class,